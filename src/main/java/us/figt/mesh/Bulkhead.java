@@ -0,0 +1,307 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A named bulkhead for a resource (e.g. a web API), limiting how many of its calls are in flight at once, so one slow
+ * resource can't take up the whole async pool and starve unrelated chains.
+ * <p>
+ * Calls past the limit wait in a bounded queue, as continuations rather than as threads: no thread blocks on the
+ * bulkhead, a waiting call is started by whichever call finishes and frees up its slot. Calls past the queue's capacity
+ * are failed right away with a {@link RejectedExecutionException}.
+ * <p>
+ * A call's slot is freed when its Mesh completes, which for a cancelled call is right away. A Mesh can't interrupt work
+ * which is already running though, so cancelled calls don't bound concurrency: their work may still be running while
+ * the next call takes over the slot. Calls which must not overlap should check for cancellation themselves.
+ *
+ * @author FigT
+ */
+public final class Bulkhead {
+
+    private static final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger drainRequests = new AtomicInteger(); // non-zero while a thread is draining
+    private final Queue<Call<?>> queue = new ConcurrentLinkedQueue<>();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private Bulkhead(String name, int maxConcurrent, int maxQueued) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Gets the bulkhead with the given name, creating it (allowing 8 calls in flight and 64 waiting) if it doesn't exist yet.
+     *
+     * @param name the name of the bulkhead, usually the resource's
+     * @return the bulkhead
+     */
+    public static Bulkhead named(String name) {
+        return bulkheads.computeIfAbsent(name, key -> new Bulkhead(key, 8, 64));
+    }
+
+    /**
+     * Creates the bulkhead with the given name, replacing the existing one (if any).
+     *
+     * @param name          the name of the bulkhead, usually the resource's
+     * @param maxConcurrent how many calls may be in flight at once
+     * @param maxQueued     how many calls may wait for a slot, 0 to fail them right away
+     * @return the bulkhead
+     */
+    public static Bulkhead register(String name, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1, and maxQueued cannot be negative");
+        }
+
+        Bulkhead bulkhead = new Bulkhead(name, maxConcurrent, maxQueued);
+        bulkheads.put(name, bulkhead);
+
+        return bulkhead;
+    }
+
+    /**
+     * @return every bulkhead, e.g. to export their metrics
+     */
+    public static Collection<Bulkhead> getAll() {
+        return Collections.unmodifiableCollection(bulkheads.values());
+    }
+
+    /**
+     * Makes the given call once there's a slot for it, its slot is freed when its Mesh completes. Cancelling the returned
+     * Mesh cancels the call (freeing its slot, see above), or removes it from the queue.
+     *
+     * @param call the call, which should dispatch its work (e.g. via {@link Mesh#createSupplyingAsyncMesh(Supplier)})
+     *             rather than do it, since it runs on whichever thread freed up the slot
+     * @param <T>  the type of the call's Mesh
+     * @return the Mesh which completes with the call's Mesh, or fails if the queue is full
+     */
+    public <T> Mesh<T> call(Supplier<? extends Mesh<T>> call) {
+        Call<T> entry = new Call<>(Mesh.createMesh(), call);
+
+        if (queue.isEmpty() && tryAcquire()) {
+            start(entry);
+        } else if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            entry.mesh.completeExceptionally(new RejectedExecutionException("The bulkhead " + name + " is full"));
+        } else {
+            delayed.increment();
+            queue.add(entry);
+            entry.mesh.getCompletableFuture().whenComplete((value, throwable) -> {
+                if (!entry.dequeued && queue.remove(entry)) { // e.g. cancelled while it waited, give up its place
+                    queued.decrementAndGet();
+                }
+            });
+            drain(); // in case every slot was freed up in the meantime
+        }
+
+        return entry.mesh;
+    }
+
+    /**
+     * Runs the given supplier <strong>asynchronously</strong> once there's a slot for it.
+     *
+     * @param supplier the supplier
+     * @param <T>      the type of the Mesh
+     * @return the Mesh which completes with the supplier's value
+     * @see #call(Supplier)
+     */
+    public <T> Mesh<T> supplyAsync(Supplier<T> supplier) {
+        return call(() -> Mesh.createSupplyingAsyncMesh(supplier));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * @return how many calls are in flight
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return how many calls are waiting for a slot
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @return the fraction of the slots in use, from 0 to 1
+     */
+    public double getSaturation() {
+        return (double) active.get() / maxConcurrent;
+    }
+
+    public long getStartedCount() {
+        return started.sum();
+    }
+
+    /**
+     * @return how many calls had to wait for a slot
+     */
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    /**
+     * @return how many calls were failed because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{" + name + ", active=" + getActive() + "/" + maxConcurrent + ", queued=" + getQueued() + "/" + maxQueued
+                + ", started=" + getStartedCount() + ", delayed=" + getDelayedCount() + ", rejected=" + getRejectedCount() + "}";
+    }
+
+    private boolean tryAcquire() {
+        for (int current; (current = active.get()) < maxConcurrent; ) {
+            if (active.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void release() {
+        active.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Starts waiting calls while there are slots for them. Only one thread drains at a time: calls which complete right
+     * away release their slot (and so drain) while being started, those requests are looped over by the draining thread
+     * rather than recursing into another drain.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return; // the draining thread will go over the queue again
+        }
+
+        int requests = 1;
+
+        do {
+            while (!queue.isEmpty() && tryAcquire()) {
+                Call<?> next = queue.poll();
+
+                if (next == null) {
+                    active.decrementAndGet(); // someone else took it
+                    continue;
+                }
+
+                next.dequeued = true;
+                queued.decrementAndGet();
+
+                if (!start(next)) {
+                    active.decrementAndGet(); // cancelled while it waited, the slot goes to the next one
+                }
+            }
+        } while ((requests = drainRequests.addAndGet(-requests)) != 0);
+    }
+
+    /**
+     * Starts a call in the slot acquired for it.
+     *
+     * @return false if the call was cancelled, so it didn't use the slot
+     */
+    private <T> boolean start(Call<T> entry) {
+        if (entry.mesh.getCompletableFuture().isDone()) {
+            return false;
+        }
+
+        started.increment();
+
+        Mesh<T> inner;
+        try {
+            inner = entry.mesh.inScope(entry.call); // on whichever thread freed up the slot
+        } catch (Throwable throwable) {
+            entry.mesh.completeExceptionally(throwable);
+            release();
+            return true;
+        }
+
+        inner.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                entry.mesh.complete(value);
+            } else {
+                entry.mesh.completeExceptionally(throwable);
+            }
+
+            release();
+        });
+        entry.mesh.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                inner.cancel(); // e.g. the outer Mesh was cancelled
+            }
+        });
+
+        return true;
+    }
+
+
+    private static final class Call<T> {
+        private final Mesh<T> mesh;
+        private final Supplier<? extends Mesh<T>> call;
+        private volatile boolean dequeued = false; // so completing a started call doesn't search the queue for it
+
+        private Call(Mesh<T> mesh, Supplier<? extends Mesh<T>> call) {
+            this.mesh = mesh;
+            this.call = call;
+        }
+    }
+}
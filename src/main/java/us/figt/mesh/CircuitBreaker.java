@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A named circuit breaker for a backend (e.g. a database), which fails calls right away while the backend is down rather
+ * than letting every chain wait on it, and retry against it.
+ * <p>
+ * The breaker is {@link State#CLOSED closed} while calls succeed. After enough consecutive failures it
+ * {@link State#OPEN opens}, failing calls with a {@link CircuitOpenException} without making them. Once the open duration
+ * has passed, it becomes {@link State#HALF_OPEN half-open} and lets a single trial call through: if it succeeds the breaker
+ * closes again, otherwise it re-opens. Only calls admitted in the current state can change it, so a late result of a call
+ * made before the breaker opened doesn't decide the trial.
+ *
+ * @author FigT
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt = 0L; // guarded by this, along with the state transitions
+    private volatile long generation = 0L; // guarded by this, bumped by every state transition
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    private CircuitBreaker(String name, int failureThreshold, long openNanos) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Gets the circuit breaker with the given name, creating it (opening after 5 consecutive failures, for 30 seconds) if
+     * it doesn't exist yet.
+     *
+     * @param name the name of the breaker, usually the backend's
+     * @return the circuit breaker
+     */
+    public static CircuitBreaker named(String name) {
+        return breakers.computeIfAbsent(name, key -> new CircuitBreaker(key, 5, TimeUnit.SECONDS.toNanos(30L)));
+    }
+
+    /**
+     * Creates the circuit breaker with the given name, replacing the existing one (if any).
+     *
+     * @param name             the name of the breaker, usually the backend's
+     * @param failureThreshold how many consecutive failures open the breaker
+     * @param openDuration     how long the breaker stays open before letting a trial call through
+     * @param unit             the unit of the open duration
+     * @return the circuit breaker
+     */
+    public static CircuitBreaker register(String name, int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+
+        CircuitBreaker breaker = new CircuitBreaker(name, failureThreshold, unit.toNanos(openDuration));
+        breakers.put(name, breaker);
+
+        return breaker;
+    }
+
+    /**
+     * @return every circuit breaker, e.g. to export their metrics
+     */
+    public static Collection<CircuitBreaker> getAll() {
+        return Collections.unmodifiableCollection(breakers.values());
+    }
+
+    /**
+     * Makes the given call through this breaker, unless it is open.
+     *
+     * @param call the call
+     * @param <T>  the type of the call's Mesh
+     * @return the call's Mesh, or a Mesh failed with a {@link CircuitOpenException} if the breaker is open
+     */
+    public <T> Mesh<T> protect(Supplier<? extends Mesh<T>> call) {
+        long permit = tryAcquire();
+
+        if (permit < 0L) {
+            Mesh<T> mesh = Mesh.createMesh();
+            mesh.completeExceptionally(new CircuitOpenException("The circuit breaker " + name + " is open"));
+
+            return mesh;
+        }
+
+        Mesh<T> mesh;
+        try {
+            mesh = Objects.requireNonNull(call.get(), "The call returned a null Mesh");
+        } catch (Throwable throwable) {
+            onFailure(permit, throwable);
+            throw throwable;
+        }
+
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                onSuccess(permit);
+            } else {
+                onFailure(permit, throwable);
+            }
+        });
+
+        return mesh;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return how many calls were failed without being made, because the breaker was open
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return how many times the breaker has opened
+     */
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + name + ", " + state + ", successes=" + getSuccessCount() + ", failures=" + getFailureCount()
+                + ", rejected=" + getRejectedCount() + ", opened=" + getOpenedCount() + "}";
+    }
+
+    /**
+     * @return the generation the call was admitted in, or -1 if it may not be made (while half-open, only the trial
+     * call may be made)
+     */
+    long tryAcquire() {
+        long admittedIn = generation; // read before the state, so a transition in between makes the permit stale rather than current
+
+        if (state == State.CLOSED) {
+            return admittedIn;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                transition(State.HALF_OPEN);
+                return generation; // the trial call
+            }
+        }
+
+        rejected.increment();
+        return -1L;
+    }
+
+    private void onSuccess(long permit) {
+        successes.increment();
+
+        if (permit != generation) {
+            return; // admitted before the last transition, it can't decide the current state
+        }
+
+        consecutiveFailures.set(0);
+
+        if (state == State.HALF_OPEN) {
+            synchronized (this) {
+                if (permit == generation) {
+                    transition(State.CLOSED);
+                }
+            }
+        }
+    }
+
+    private void onFailure(long permit, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        boolean cancelled = cause instanceof CancellationException; // says nothing about the backend
+
+        if (!cancelled) {
+            failures.increment();
+        }
+
+        if (permit != generation) {
+            return; // admitted before the last transition, it can't decide the current state
+        }
+
+        if (state == State.CLOSED && (cancelled || consecutiveFailures.incrementAndGet() < failureThreshold)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (permit != generation) {
+                return; // another call already made the transition
+            }
+
+            transition(State.OPEN);
+
+            if (cancelled) {
+                openedAt = System.nanoTime() - openNanos; // the trial was cancelled, let the next call try again
+            } else {
+                opened.increment();
+            }
+        }
+    }
+
+    // guarded by this
+    private void transition(State to) {
+        state = to;
+        generation++;
+
+        if (to == State.OPEN) {
+            openedAt = System.nanoTime();
+            consecutiveFailures.set(0);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+import static us.figt.mesh.utils.ThreadContext.ASYNC;
+import static us.figt.mesh.utils.ThreadContext.SYNC;
+
+/**
+ * A Mesh of a primitive {@code double}, which passes its value between stages without boxing it.
+ * <p>
+ * Use {@link #fromMesh(Mesh)} and {@link #boxed()} to convert from and to a regular {@link Mesh}. A DoubleMesh can't be
+ * cancelled, and is not covered by {@link MeshScope}s or the leak detector, box it where those are needed.
+ *
+ * @author FigT
+ */
+@SuppressWarnings("unused")
+public final class DoubleMesh extends PrimitiveMesh {
+
+    private double value; // published by the write to state
+
+    private DoubleMesh() {
+    }
+
+    /**
+     * Creates a fresh DoubleMesh instance which you can then complete later.
+     *
+     * @return the DoubleMesh instance
+     */
+    public static DoubleMesh createMesh() {
+        return new DoubleMesh();
+    }
+
+    /**
+     * Creates an already 'completed' DoubleMesh instance with a supplied value.
+     *
+     * @param value the value to complete this DoubleMesh with
+     * @return the completed DoubleMesh instance
+     */
+    public static DoubleMesh createCompletedMesh(double value) {
+        DoubleMesh mesh = new DoubleMesh();
+        mesh.complete(value);
+
+        return mesh;
+    }
+
+    /**
+     * Creates a DoubleMesh which is supplied <strong>synchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied DoubleMesh instance
+     */
+    public static DoubleMesh createSupplyingSyncMesh(DoubleSupplier supplier) {
+        return supply(supplier, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates a DoubleMesh which is supplied <strong>synchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this DoubleMesh
+     * @return the supplied DoubleMesh instance
+     */
+    public static DoubleMesh createSupplyingSyncDelayedMesh(DoubleSupplier supplier, long delay) {
+        return supply(supplier, SYNC, delay);
+    }
+
+    /**
+     * Creates a DoubleMesh which is supplied <strong>asynchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied DoubleMesh instance
+     */
+    public static DoubleMesh createSupplyingAsyncMesh(DoubleSupplier supplier) {
+        return supply(supplier, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates a DoubleMesh which is supplied <strong>asynchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this DoubleMesh
+     * @return the supplied DoubleMesh instance
+     */
+    public static DoubleMesh createSupplyingAsyncDelayedMesh(DoubleSupplier supplier, long delay) {
+        return supply(supplier, ASYNC, delay);
+    }
+
+    /**
+     * Creates a DoubleMesh which is completed with the (unboxed) result of the given Mesh.
+     *
+     * @param mesh the Mesh to convert
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh fromMesh(Mesh<? extends Number> mesh) {
+        return fromMesh(mesh, Number::doubleValue);
+    }
+
+    /**
+     * Creates a DoubleMesh which is completed with the result of the given Mesh, converted by the given function.
+     *
+     * @param mesh     the Mesh to convert
+     * @param function the function to convert the Mesh's result with
+     * @param <T>      the type of the Mesh
+     * @return the new DoubleMesh instance
+     */
+    public static <T> DoubleMesh fromMesh(Mesh<T> mesh, ToDoubleFunction<? super T> function) {
+        return fromMesh(mesh, new DoubleMesh(), (newMesh, value) -> newMesh.complete(function.applyAsDouble(value)));
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the sum of the given DoubleMeshes, once all of them have completed.
+     *
+     * @param meshes the DoubleMeshes to sum
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh sum(DoubleMesh... meshes) {
+        return reduce(meshes, 0D, Double::sum);
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the sum of the given DoubleMeshes, once all of them have completed.
+     *
+     * @param meshes the DoubleMeshes to sum
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh sum(Collection<DoubleMesh> meshes) {
+        return sum(meshes.toArray(new DoubleMesh[0]));
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the largest value of the given DoubleMeshes, once all of them have completed.
+     * <p>
+     * If no DoubleMeshes are given, the returned DoubleMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the DoubleMeshes to compare
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh max(DoubleMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new DoubleMesh());
+        }
+
+        return reduce(meshes, Double.NEGATIVE_INFINITY, Math::max);
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the largest value of the given DoubleMeshes, once all of them have completed.
+     *
+     * @param meshes the DoubleMeshes to compare
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh max(Collection<DoubleMesh> meshes) {
+        return max(meshes.toArray(new DoubleMesh[0]));
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the smallest value of the given DoubleMeshes, once all of them have completed.
+     * <p>
+     * If no DoubleMeshes are given, the returned DoubleMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the DoubleMeshes to compare
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh min(DoubleMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new DoubleMesh());
+        }
+
+        return reduce(meshes, Double.POSITIVE_INFINITY, Math::min);
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the smallest value of the given DoubleMeshes, once all of them have completed.
+     *
+     * @param meshes the DoubleMeshes to compare
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh min(Collection<DoubleMesh> meshes) {
+        return min(meshes.toArray(new DoubleMesh[0]));
+    }
+
+    /**
+     * Creates a DoubleMesh which completes with the given DoubleMeshes' values combined by the given operator, once all of them have completed.
+     * <p>
+     * If any of the DoubleMeshes completes exceptionally, or the operator throws, the returned DoubleMesh is completed with that exception.
+     *
+     * @param meshes   the DoubleMeshes to reduce
+     * @param identity the identity value of the operator
+     * @param operator the associative operator to combine values with
+     * @return the new DoubleMesh instance
+     */
+    public static DoubleMesh reduce(DoubleMesh[] meshes, double identity, DoubleBinaryOperator operator) {
+        DoubleMesh newMesh = new DoubleMesh();
+
+        if (meshes.length == 0) {
+            newMesh.complete(identity);
+            return newMesh;
+        }
+
+        return reduce(meshes, new DoubleReduction(newMesh, meshes.length, identity, operator));
+    }
+
+
+    // ~~~ ASYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this DoubleMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh applyAsync(DoubleUnaryOperator function) {
+        return apply(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this DoubleMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh applyAsyncDelayed(DoubleUnaryOperator function, long delay) {
+        return apply(function, ASYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this DoubleMesh's value into an object <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjAsync(DoubleFunction<? extends R> function) {
+        return mapToObj(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsync(DoubleConsumer consumer) {
+        return accept(consumer, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsyncDelayed(DoubleConsumer consumer, long delay) {
+        return accept(consumer, ASYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>asynchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh exceptionallyAsync(ToDoubleFunction<Throwable> function) {
+        return exceptionally(function, ASYNC);
+    }
+
+
+    // ~~~ SYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this DoubleMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh applySync(DoubleUnaryOperator function) {
+        return apply(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this DoubleMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh applySyncDelayed(DoubleUnaryOperator function, long delay) {
+        return apply(function, SYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this DoubleMesh's value into an object <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjSync(DoubleFunction<? extends R> function) {
+        return mapToObj(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSync(DoubleConsumer consumer) {
+        return accept(consumer, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSyncDelayed(DoubleConsumer consumer, long delay) {
+        return accept(consumer, SYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>synchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new DoubleMesh instance with the applied function
+     */
+    public DoubleMesh exceptionallySync(ToDoubleFunction<Throwable> function) {
+        return exceptionally(function, SYNC);
+    }
+
+
+    /**
+     * If not already completed, completes this DoubleMesh with the given value.
+     *
+     * @param value the value to complete this DoubleMesh with
+     * @return true if this call completed the DoubleMesh
+     */
+    public boolean complete(double value) {
+        if (!startCompleting()) {
+            return false;
+        }
+
+        this.value = value;
+        finishCompleting();
+
+        return true;
+    }
+
+    /**
+     * Gets the value of this DoubleMesh if it has completed normally, or the given value otherwise.
+     *
+     * @param valueIfAbsent the value to return if this DoubleMesh has not completed normally
+     * @return the value
+     */
+    public double getNow(double valueIfAbsent) {
+        return isDone() && !isCompletedExceptionally() ? value : valueIfAbsent;
+    }
+
+    /**
+     * Converts this DoubleMesh to a regular Mesh, boxing its value once.
+     *
+     * @return the new Mesh instance
+     */
+    public Mesh<Double> boxed() {
+        return toMesh(() -> value);
+    }
+
+
+    private static DoubleMesh supply(DoubleSupplier supplier, ThreadContext threadContext, long delay) {
+        return supply(new DoubleMesh(), threadContext, delay, newMesh -> newMesh.complete(supplier.getAsDouble()));
+    }
+
+    private DoubleMesh apply(DoubleUnaryOperator function, ThreadContext threadContext, long delay) {
+        return then(this, new DoubleMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.applyAsDouble(source.value)));
+    }
+
+    private <R> Mesh<R> mapToObj(DoubleFunction<? extends R> function, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<R>createMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.apply(source.value)));
+    }
+
+    private Mesh<Void> accept(DoubleConsumer consumer, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<Void>createMesh(), threadContext, delay, (source, newMesh) -> {
+            consumer.accept(source.value);
+            newMesh.complete(null);
+        });
+    }
+
+    private DoubleMesh exceptionally(ToDoubleFunction<Throwable> function, ThreadContext threadContext) {
+        return recover(this, new DoubleMesh(), threadContext,
+                (source, newMesh) -> newMesh.complete(source.value),
+                (source, newMesh) -> newMesh.complete(function.applyAsDouble(source.getThrowable())));
+    }
+
+
+    private static final class DoubleReduction extends Reduction<DoubleMesh> {
+
+        private final DoubleBinaryOperator operator;
+        private double accumulator;
+
+        private DoubleReduction(DoubleMesh target, int remaining, double identity, DoubleBinaryOperator operator) {
+            super(target, remaining);
+            this.accumulator = identity;
+            this.operator = operator;
+        }
+
+        @Override
+        void accumulate(DoubleMesh source) {
+            accumulator = operator.applyAsDouble(accumulator, source.value);
+        }
+
+        @Override
+        void finish() {
+            target.complete(accumulator);
+        }
+    }
+}
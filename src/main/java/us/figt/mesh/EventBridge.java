@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerEvent;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Completes the Meshes waiting on events, through one listener per event type (registered the first time the type is
+ * awaited) rather than one per waiter.
+ * <p>
+ * Waiters on a key (e.g. a player's UUID) are indexed by it, so an event only has to be checked against the waiters on
+ * its own key. Waiters are removed however their Mesh completes: the event fired, the timeout expired, or it was cancelled.
+ * The index of a key function is removed along with its last waiter, so key functions which aren't shared (e.g.
+ * capturing lambdas) don't pile up.
+ *
+ * @author FigT
+ */
+final class EventBridge<E extends Event> implements Listener {
+
+    static final Function<PlayerEvent, Object> PLAYER_KEY = event -> event.getPlayer().getUniqueId();
+
+    private static final Object NO_KEY = new Object(); // the key of the waiters which want every event
+    private static final Function<Event, Object> NO_KEY_FUNCTION = event -> NO_KEY;
+    private static final Map<Class<? extends Event>, EventBridge<?>> bridges = new ConcurrentHashMap<>();
+
+    private final Class<E> eventClass;
+    // the waiters, by key function and then by key, a key function is only present while it has waiters
+    private final Map<Function<? super E, ?>, Map<Object, Queue<Waiter<E>>>> waiters = new ConcurrentHashMap<>();
+
+    private EventBridge(Class<E> eventClass) {
+        this.eventClass = eventClass;
+    }
+
+    /**
+     * Creates a Mesh which completes with the next event of the given type whose key (as given by the key function) is
+     * equal to the given key, and which passes the predicate.
+     *
+     * @param eventClass  the type of event
+     * @param keyFunction the key function, or null to check every event
+     * @param key         the key
+     * @param predicate   the predicate the event must pass, or null to accept any
+     * @param timeout     how long to wait before failing with a {@link TimeoutException}, 0 or less waits forever
+     * @param unit        the unit of the timeout
+     * @param <E>         the type of event
+     * @return the Mesh
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Event> Mesh<E> await(Class<E> eventClass, Function<? super E, ?> keyFunction, Object key,
+                                           Predicate<? super E> predicate, long timeout, TimeUnit unit) {
+        EventBridge<E> bridge = (EventBridge<E>) bridges.computeIfAbsent(eventClass, EventBridge::register);
+        Mesh<E> mesh = Mesh.createMesh();
+        Waiter<E> waiter = new Waiter<>(mesh, predicate);
+
+        Function<? super E, ?> function = keyFunction == null ? NO_KEY_FUNCTION : keyFunction;
+        Object index = keyFunction == null ? NO_KEY : key;
+        bridge.add(function, index, waiter);
+
+        MeshTask timeoutTask = timeout > 0L
+                ? SchedulerUtil.getScheduler().schedule(() -> mesh.completeExceptionally(new TimeoutException("No matching " + eventClass.getSimpleName() + " within " + timeout + " " + unit.name().toLowerCase())), timeout, unit)
+                : MeshTask.NONE;
+
+        mesh.getCompletableFuture().whenComplete((event, throwable) -> {
+            timeoutTask.cancel();
+            bridge.remove(function, index, waiter);
+        });
+
+        return mesh;
+    }
+
+    private static <E extends Event> EventBridge<E> register(Class<? extends Event> eventClass) {
+        @SuppressWarnings("unchecked")
+        EventBridge<E> bridge = new EventBridge<>((Class<E>) eventClass);
+
+        // monitor, since waiters only observe the outcome of the event
+        PluginUtil.getPlugin().getServer().getPluginManager().registerEvent(eventClass, bridge, EventPriority.MONITOR,
+                (listener, event) -> bridge.dispatch(event), PluginUtil.getPlugin());
+
+        return bridge;
+    }
+
+    // adding and removing both go through compute on the key function, so a removal can't drop a map being added to
+    private void add(Function<? super E, ?> keyFunction, Object key, Waiter<E> waiter) {
+        waiters.compute(keyFunction, (function, byKey) -> {
+            if (byKey == null) {
+                byKey = new ConcurrentHashMap<>();
+            }
+
+            byKey.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(waiter);
+            return byKey;
+        });
+    }
+
+    private void remove(Function<? super E, ?> keyFunction, Object key, Waiter<E> waiter) {
+        waiters.computeIfPresent(keyFunction, (function, byKey) -> {
+            byKey.computeIfPresent(key, (k, queue) -> queue.remove(waiter) && queue.isEmpty() ? null : queue);
+            return byKey.isEmpty() ? null : byKey;
+        });
+    }
+
+    /**
+     * @return the amount of key functions which currently have waiters
+     */
+    int getKeyFunctionCount() {
+        return waiters.size();
+    }
+
+    /**
+     * Replaces the bridge of the given type with one whose listener isn't registered, for tests which dispatch the events
+     * themselves.
+     *
+     * @param eventClass the type of event
+     * @param <E>        the type of event
+     * @return the new bridge
+     */
+    static <E extends Event> EventBridge<E> replaceUnregistered(Class<E> eventClass) {
+        EventBridge<E> bridge = new EventBridge<>(eventClass);
+        bridges.put(eventClass, bridge);
+
+        return bridge;
+    }
+
+    void dispatch(Event event) {
+        if (!eventClass.isInstance(event)) {
+            return; // a subclass sharing our handler list
+        }
+
+        E typed = eventClass.cast(event);
+
+        for (Map.Entry<Function<? super E, ?>, Map<Object, Queue<Waiter<E>>>> entry : waiters.entrySet()) {
+            Map<Object, Queue<Waiter<E>>> byKey = entry.getValue();
+            if (byKey.isEmpty()) {
+                continue;
+            }
+
+            Queue<Waiter<E>> queue;
+            try {
+                queue = byKey.get(entry.getKey().apply(typed));
+            } catch (RuntimeException e) {
+                continue; // the key function doesn't apply to this event (e.g. a player event without a player)
+            }
+
+            if (queue == null) {
+                continue;
+            }
+
+            for (Waiter<E> waiter : queue) {
+                waiter.offer(typed); // completing removes the waiter
+            }
+        }
+    }
+
+
+    private static final class Waiter<E extends Event> {
+        private final Mesh<E> mesh;
+        private final Predicate<? super E> predicate;
+
+        private Waiter(Mesh<E> mesh, Predicate<? super E> predicate) {
+            this.mesh = mesh;
+            this.predicate = predicate;
+        }
+
+        private void offer(E event) {
+            if (mesh.getCompletableFuture().isDone()) {
+                return;
+            }
+
+            try {
+                if (predicate == null || predicate.test(event)) {
+                    mesh.complete(event);
+                }
+            } catch (Throwable throwable) {
+                mesh.completeExceptionally(throwable);
+            }
+        }
+    }
+}
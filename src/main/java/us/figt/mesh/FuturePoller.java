@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+
+/**
+ * Watches plain {@link Future}s (ones which can't notify us when they finish) from a single shared timer task, instead
+ * of parking a thread per future.
+ * <p>
+ * The poll interval adapts: it starts at {@link #MIN_INTERVAL_MICROS} whenever a future finishes or a new one is watched,
+ * and doubles after every poll which finds nothing done, up to {@link #MAX_INTERVAL_MICROS} (one tick).
+ *
+ * @author FigT
+ */
+final class FuturePoller {
+
+    static final long MIN_INTERVAL_MICROS = 500L;
+    static final long MAX_INTERVAL_MICROS = 50_000L;
+
+    private static final Queue<Watched<?>> incoming = new ConcurrentLinkedQueue<>();
+    private static final List<Watched<?>> watched = new ArrayList<>(); // only touched by the poll task
+    private static final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private static final AtomicInteger watchedCount = new AtomicInteger(); // incoming and watched, readable from any thread
+
+    private static long intervalMicros = MIN_INTERVAL_MICROS; // only touched by the poll task
+
+    private FuturePoller() {
+        throw new AssertionError("Container class cannot be instantiated"); // seal
+    }
+
+    /**
+     * Completes the given Mesh with the result of the given Future once it is done.
+     *
+     * @param future the Future to watch
+     * @param mesh   the Mesh to complete
+     * @param <R>    the type of the Future and Mesh
+     */
+    static <R> void watch(Future<R> future, Mesh<R> mesh) {
+        watchedCount.incrementAndGet();
+        incoming.add(new Watched<>(future, mesh));
+
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                SchedulerUtil.getScheduler().schedule(FuturePoller::poll, 0L, TimeUnit.MICROSECONDS);
+            } catch (RuntimeException e) {
+                scheduled.set(false); // the next watch tries again
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the amount of futures currently being watched
+     */
+    static int getWatchedCount() {
+        return watchedCount.get();
+    }
+
+    private static void poll() {
+        boolean newArrivals = false;
+
+        for (Watched<?> next; (next = incoming.poll()) != null; ) {
+            watched.add(next);
+            newArrivals = true;
+        }
+
+        List<Watched<?>> done = null;
+
+        for (Iterator<Watched<?>> iterator = watched.iterator(); iterator.hasNext(); ) {
+            Watched<?> next = iterator.next();
+
+            if (next.future.isDone() || next.mesh.isCancelled()) {
+                iterator.remove();
+                watchedCount.decrementAndGet();
+
+                if (done == null) done = new ArrayList<>();
+                done.add(next);
+            }
+        }
+
+        if (done != null) {
+            // complete off the timer thread, so dependents of the Meshes can't stall polling
+            List<Watched<?>> toComplete = done;
+
+            try {
+                MeshRunnables.run(() -> toComplete.forEach(Watched::complete), ThreadContext.ASYNC, NO_DElAY);
+            } catch (RuntimeException e) {
+                toComplete.forEach(Watched::complete); // rejected (e.g. the plugin is being disabled), don't lose them
+            }
+        }
+
+        intervalMicros = done != null || newArrivals ? MIN_INTERVAL_MICROS : Math.min(intervalMicros << 1, MAX_INTERVAL_MICROS);
+
+        if (watched.isEmpty()) {
+            scheduled.set(false);
+
+            // a future may have been watched between the last drain and the flag being cleared
+            if (incoming.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+
+        try {
+            SchedulerUtil.getScheduler().schedule(FuturePoller::poll, intervalMicros, TimeUnit.MICROSECONDS);
+        } catch (RuntimeException e) {
+            scheduled.set(false); // the watched futures are kept, and polled again once the next one is watched
+            PluginUtil.logException("Mesh-FuturePoller - Could not schedule the next poll", e);
+        }
+    }
+
+    /**
+     * Completes the given Mesh with the result of the given (done) Future.
+     *
+     * @param future the done Future
+     * @param mesh   the Mesh to complete
+     * @param <R>    the type of the Future and Mesh
+     */
+    static <R> void completeFrom(Future<R> future, Mesh<R> mesh) {
+        try {
+            mesh.complete(future.get());
+        } catch (ExecutionException | CancellationException e) {
+            mesh.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mesh.completeExceptionally(e);
+        }
+    }
+
+
+    private static final class Watched<R> {
+
+        private final Future<R> future;
+        private final Mesh<R> mesh;
+
+        private Watched(Future<R> future, Mesh<R> mesh) {
+            this.future = future;
+            this.mesh = mesh;
+        }
+
+        private void complete() {
+            if (future.isDone()) { // the Mesh may have been cancelled instead
+                completeFrom(future, mesh);
+            }
+        }
+    }
+}
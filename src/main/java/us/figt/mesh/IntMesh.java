@@ -0,0 +1,456 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+import static us.figt.mesh.utils.ThreadContext.ASYNC;
+import static us.figt.mesh.utils.ThreadContext.SYNC;
+
+/**
+ * A Mesh of a primitive {@code int}, which passes its value between stages without boxing it.
+ * <p>
+ * Use {@link #fromMesh(Mesh)} and {@link #boxed()} to convert from and to a regular {@link Mesh}. An IntMesh can't be
+ * cancelled, and is not covered by {@link MeshScope}s or the leak detector, box it where those are needed.
+ *
+ * @author FigT
+ */
+@SuppressWarnings("unused")
+public final class IntMesh extends PrimitiveMesh {
+
+    private int value; // published by the write to state
+
+    private IntMesh() {
+    }
+
+    /**
+     * Creates a fresh IntMesh instance which you can then complete later.
+     *
+     * @return the IntMesh instance
+     */
+    public static IntMesh createMesh() {
+        return new IntMesh();
+    }
+
+    /**
+     * Creates an already 'completed' IntMesh instance with a supplied value.
+     *
+     * @param value the value to complete this IntMesh with
+     * @return the completed IntMesh instance
+     */
+    public static IntMesh createCompletedMesh(int value) {
+        IntMesh mesh = new IntMesh();
+        mesh.complete(value);
+
+        return mesh;
+    }
+
+    /**
+     * Creates an IntMesh which is supplied <strong>synchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied IntMesh instance
+     */
+    public static IntMesh createSupplyingSyncMesh(IntSupplier supplier) {
+        return supply(supplier, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates an IntMesh which is supplied <strong>synchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this IntMesh
+     * @return the supplied IntMesh instance
+     */
+    public static IntMesh createSupplyingSyncDelayedMesh(IntSupplier supplier, long delay) {
+        return supply(supplier, SYNC, delay);
+    }
+
+    /**
+     * Creates an IntMesh which is supplied <strong>asynchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied IntMesh instance
+     */
+    public static IntMesh createSupplyingAsyncMesh(IntSupplier supplier) {
+        return supply(supplier, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates an IntMesh which is supplied <strong>asynchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this IntMesh
+     * @return the supplied IntMesh instance
+     */
+    public static IntMesh createSupplyingAsyncDelayedMesh(IntSupplier supplier, long delay) {
+        return supply(supplier, ASYNC, delay);
+    }
+
+    /**
+     * Creates an IntMesh which is completed with the (unboxed) result of the given Mesh.
+     *
+     * @param mesh the Mesh to convert
+     * @return the new IntMesh instance
+     */
+    public static IntMesh fromMesh(Mesh<? extends Number> mesh) {
+        return fromMesh(mesh, Number::intValue);
+    }
+
+    /**
+     * Creates an IntMesh which is completed with the result of the given Mesh, converted by the given function.
+     *
+     * @param mesh     the Mesh to convert
+     * @param function the function to convert the Mesh's result with
+     * @param <T>      the type of the Mesh
+     * @return the new IntMesh instance
+     */
+    public static <T> IntMesh fromMesh(Mesh<T> mesh, ToIntFunction<? super T> function) {
+        return fromMesh(mesh, new IntMesh(), (newMesh, value) -> newMesh.complete(function.applyAsInt(value)));
+    }
+
+    /**
+     * Creates an IntMesh which completes with the sum of the given IntMeshes, once all of them have completed.
+     *
+     * @param meshes the IntMeshes to sum
+     * @return the new IntMesh instance
+     */
+    public static IntMesh sum(IntMesh... meshes) {
+        return reduce(meshes, 0, Integer::sum);
+    }
+
+    /**
+     * Creates an IntMesh which completes with the sum of the given IntMeshes, once all of them have completed.
+     *
+     * @param meshes the IntMeshes to sum
+     * @return the new IntMesh instance
+     */
+    public static IntMesh sum(Collection<IntMesh> meshes) {
+        return sum(meshes.toArray(new IntMesh[0]));
+    }
+
+    /**
+     * Creates an IntMesh which completes with the largest value of the given IntMeshes, once all of them have completed.
+     * <p>
+     * If no IntMeshes are given, the returned IntMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the IntMeshes to compare
+     * @return the new IntMesh instance
+     */
+    public static IntMesh max(IntMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new IntMesh());
+        }
+
+        return reduce(meshes, Integer.MIN_VALUE, Math::max);
+    }
+
+    /**
+     * Creates an IntMesh which completes with the largest value of the given IntMeshes, once all of them have completed.
+     *
+     * @param meshes the IntMeshes to compare
+     * @return the new IntMesh instance
+     */
+    public static IntMesh max(Collection<IntMesh> meshes) {
+        return max(meshes.toArray(new IntMesh[0]));
+    }
+
+    /**
+     * Creates an IntMesh which completes with the smallest value of the given IntMeshes, once all of them have completed.
+     * <p>
+     * If no IntMeshes are given, the returned IntMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the IntMeshes to compare
+     * @return the new IntMesh instance
+     */
+    public static IntMesh min(IntMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new IntMesh());
+        }
+
+        return reduce(meshes, Integer.MAX_VALUE, Math::min);
+    }
+
+    /**
+     * Creates an IntMesh which completes with the smallest value of the given IntMeshes, once all of them have completed.
+     *
+     * @param meshes the IntMeshes to compare
+     * @return the new IntMesh instance
+     */
+    public static IntMesh min(Collection<IntMesh> meshes) {
+        return min(meshes.toArray(new IntMesh[0]));
+    }
+
+    /**
+     * Creates an IntMesh which completes with the given IntMeshes' values combined by the given operator, once all of them have completed.
+     * <p>
+     * If any of the IntMeshes completes exceptionally, or the operator throws, the returned IntMesh is completed with that exception.
+     *
+     * @param meshes   the IntMeshes to reduce
+     * @param identity the identity value of the operator
+     * @param operator the associative operator to combine values with
+     * @return the new IntMesh instance
+     */
+    public static IntMesh reduce(IntMesh[] meshes, int identity, IntBinaryOperator operator) {
+        IntMesh newMesh = new IntMesh();
+
+        if (meshes.length == 0) {
+            newMesh.complete(identity);
+            return newMesh;
+        }
+
+        return reduce(meshes, new IntReduction(newMesh, meshes.length, identity, operator));
+    }
+
+
+    // ~~~ ASYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this IntMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh applyAsync(IntUnaryOperator function) {
+        return apply(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this IntMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh applyAsyncDelayed(IntUnaryOperator function, long delay) {
+        return apply(function, ASYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this IntMesh's value into an object <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjAsync(IntFunction<? extends R> function) {
+        return mapToObj(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsync(IntConsumer consumer) {
+        return accept(consumer, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsyncDelayed(IntConsumer consumer, long delay) {
+        return accept(consumer, ASYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>asynchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh exceptionallyAsync(ToIntFunction<Throwable> function) {
+        return exceptionally(function, ASYNC);
+    }
+
+
+    // ~~~ SYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this IntMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh applySync(IntUnaryOperator function) {
+        return apply(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this IntMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh applySyncDelayed(IntUnaryOperator function, long delay) {
+        return apply(function, SYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this IntMesh's value into an object <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjSync(IntFunction<? extends R> function) {
+        return mapToObj(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSync(IntConsumer consumer) {
+        return accept(consumer, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSyncDelayed(IntConsumer consumer, long delay) {
+        return accept(consumer, SYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>synchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new IntMesh instance with the applied function
+     */
+    public IntMesh exceptionallySync(ToIntFunction<Throwable> function) {
+        return exceptionally(function, SYNC);
+    }
+
+
+    /**
+     * If not already completed, completes this IntMesh with the given value.
+     *
+     * @param value the value to complete this IntMesh with
+     * @return true if this call completed the IntMesh
+     */
+    public boolean complete(int value) {
+        if (!startCompleting()) {
+            return false;
+        }
+
+        this.value = value;
+        finishCompleting();
+
+        return true;
+    }
+
+    /**
+     * Gets the value of this IntMesh if it has completed normally, or the given value otherwise.
+     *
+     * @param valueIfAbsent the value to return if this IntMesh has not completed normally
+     * @return the value
+     */
+    public int getNow(int valueIfAbsent) {
+        return isDone() && !isCompletedExceptionally() ? value : valueIfAbsent;
+    }
+
+    /**
+     * Converts this IntMesh to a regular Mesh, boxing its value once.
+     *
+     * @return the new Mesh instance
+     */
+    public Mesh<Integer> boxed() {
+        return toMesh(() -> value);
+    }
+
+
+    private static IntMesh supply(IntSupplier supplier, ThreadContext threadContext, long delay) {
+        return supply(new IntMesh(), threadContext, delay, newMesh -> newMesh.complete(supplier.getAsInt()));
+    }
+
+    private IntMesh apply(IntUnaryOperator function, ThreadContext threadContext, long delay) {
+        return then(this, new IntMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.applyAsInt(source.value)));
+    }
+
+    private <R> Mesh<R> mapToObj(IntFunction<? extends R> function, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<R>createMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.apply(source.value)));
+    }
+
+    private Mesh<Void> accept(IntConsumer consumer, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<Void>createMesh(), threadContext, delay, (source, newMesh) -> {
+            consumer.accept(source.value);
+            newMesh.complete(null);
+        });
+    }
+
+    private IntMesh exceptionally(ToIntFunction<Throwable> function, ThreadContext threadContext) {
+        return recover(this, new IntMesh(), threadContext,
+                (source, newMesh) -> newMesh.complete(source.value),
+                (source, newMesh) -> newMesh.complete(function.applyAsInt(source.getThrowable())));
+    }
+
+
+    private static final class IntReduction extends Reduction<IntMesh> {
+
+        private final IntBinaryOperator operator;
+        private int accumulator;
+
+        private IntReduction(IntMesh target, int remaining, int identity, IntBinaryOperator operator) {
+            super(target, remaining);
+            this.accumulator = identity;
+            this.operator = operator;
+        }
+
+        @Override
+        void accumulate(IntMesh source) {
+            accumulator = operator.applyAsInt(accumulator, source.value);
+        }
+
+        @Override
+        void finish() {
+            target.complete(accumulator);
+        }
+    }
+}
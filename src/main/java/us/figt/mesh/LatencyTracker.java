@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent latencies of something (e.g. a backend's calls), to derive delays like a hedge delay from them.
+ * <p>
+ * Recording is lock-free, percentiles are computed from a copy of the recent samples and cached briefly, so they can be
+ * asked for on every call.
+ *
+ * @author FigT
+ */
+public final class LatencyTracker {
+
+    private static final long RECOMPUTE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long UNFILLED = -1L; // a slot whose index was claimed, but whose latency isn't written yet
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final int minSamples;
+
+    // the last computed percentile, there's usually only one asked for per tracker
+    private volatile Cached cached = null;
+
+    /**
+     * @param capacity   how many of the most recent latencies are kept
+     * @param minSamples how many latencies must have been recorded before percentiles are given
+     */
+    public LatencyTracker(int capacity, int minSamples) {
+        if (capacity < 1 || minSamples < 1 || minSamples > capacity) {
+            throw new IllegalArgumentException("capacity and minSamples must be at least 1, and minSamples at most capacity");
+        }
+
+        this.samples = new AtomicLongArray(capacity);
+        this.minSamples = minSamples;
+
+        for (int i = 0; i < capacity; i++) {
+            samples.set(i, UNFILLED);
+        }
+    }
+
+    /**
+     * Keeps the most recent 1024 latencies, and gives percentiles after 20 have been recorded.
+     */
+    public LatencyTracker() {
+        this(1024, 20);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param latency the latency
+     * @param unit    the unit of the latency
+     */
+    public void record(long latency, TimeUnit unit) {
+        long index = count.getAndIncrement();
+        samples.set((int) (index % samples.length()), Math.max(0L, unit.toNanos(latency))); // negative is UNFILLED
+    }
+
+    /**
+     * Gets the given percentile of the recent latencies.
+     *
+     * @param percentile the percentile, between 0 and 1 (e.g. 0.95)
+     * @param unit       the unit to get it in
+     * @return the percentile, or -1 if not enough latencies have been recorded yet
+     */
+    public long percentile(double percentile, TimeUnit unit) {
+        if (percentile < 0D || percentile > 1D) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+
+        long recorded = count.get();
+        if (recorded < minSamples) {
+            return -1L;
+        }
+
+        long now = System.nanoTime();
+        Cached cached = this.cached;
+
+        if (cached == null || cached.percentile != percentile || now - cached.computedAt > RECOMPUTE_NANOS) {
+            long[] copy = new long[(int) Math.min(recorded, samples.length())];
+            int size = 0;
+
+            for (int i = 0; i < copy.length; i++) {
+                long sample = samples.get(i);
+
+                if (sample != UNFILLED) { // being recorded right now, its count was published before its latency
+                    copy[size++] = sample;
+                }
+            }
+
+            if (size == 0) {
+                return -1L;
+            }
+
+            Arrays.sort(copy, 0, size);
+            int rank = (int) Math.ceil(percentile * size) - 1; // nearest rank
+            cached = new Cached(percentile, copy[Math.max(0, Math.min(size - 1, rank))], now);
+            this.cached = cached;
+        }
+
+        return unit.convert(cached.value, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return how many latencies have been recorded in total
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+
+    private static final class Cached {
+        private final double percentile;
+        private final long value;
+        private final long computedAt;
+
+        private Cached(double percentile, long value, long computedAt) {
+            this.percentile = percentile;
+            this.value = value;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cold Mesh: its supplier and stages are only recorded, and nothing is scheduled until the chain is started by a
+ * terminal stage (the accept methods), a join, or a conversion ({@link #start()}, {@link #toCompletableFuture()}).
+ * A speculative chain which ends up unused therefore costs nothing but the recording.
+ * <p>
+ * Once started the recorded chain runs as a {@link MeshPipeline} run: consecutive stages with the same thread context
+ * (and no delay) run within a single dispatch, the supplier included.
+ * <p>
+ * A lazy Mesh records a single chain, it can't branch: each stage method hands the recorded chain over to the lazy Mesh
+ * it returns, after which this one can no longer be continued nor started. Stages can no longer be recorded once it is
+ * started either, add them to the Mesh returned by {@link #start()} instead. Both fail with an {@link IllegalStateException}.
+ * <pre>{@code
+ * LazyMesh<Stats> prefetch = LazyMesh.supplyAsync(() -> loadStats(uuid))
+ *         .applyAsync(Stats::summarize);
+ *
+ * // later, only if the player opens the menu
+ * prefetch.acceptSync(summary -> menu.show(summary));
+ * }</pre>
+ *
+ * @param <T> the type of this Mesh
+ * @author FigT
+ */
+@SuppressWarnings("unused")
+public final class LazyMesh<T> {
+
+    private MeshPipeline.Builder<Void, T> builder; // guarded by this, null once handed over or started
+    private Mesh<T> started = null; // guarded by this
+
+    private LazyMesh(MeshPipeline.Builder<Void, T> builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Creates a lazy Mesh which, once started, supplies its value <strong>asynchronously</strong>.
+     *
+     * @param supplier the supplier
+     * @param <T>      the type of the Mesh
+     * @return the lazy Mesh
+     */
+    public static <T> LazyMesh<T> supplyAsync(Supplier<? extends T> supplier) {
+        return new LazyMesh<>(MeshPipeline.<Void>builder().applyAsync(ignored -> supplier.get()));
+    }
+
+    /**
+     * Creates a lazy Mesh which, once started, supplies its value <strong>asynchronously</strong> after the given delay.
+     *
+     * @param supplier the supplier
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply the value
+     * @param <T>      the type of the Mesh
+     * @return the lazy Mesh
+     */
+    public static <T> LazyMesh<T> supplyAsyncDelayed(Supplier<? extends T> supplier, long delay) {
+        return new LazyMesh<>(MeshPipeline.<Void>builder().applyAsyncDelayed(ignored -> supplier.get(), delay));
+    }
+
+    /**
+     * Creates a lazy Mesh which, once started, supplies its value <strong>synchronously</strong>.
+     *
+     * @param supplier the supplier
+     * @param <T>      the type of the Mesh
+     * @return the lazy Mesh
+     */
+    public static <T> LazyMesh<T> supplySync(Supplier<? extends T> supplier) {
+        return new LazyMesh<>(MeshPipeline.<Void>builder().applySync(ignored -> supplier.get()));
+    }
+
+    /**
+     * Creates a lazy Mesh which, once started, supplies its value <strong>synchronously</strong> after the given delay.
+     *
+     * @param supplier the supplier
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply the value
+     * @param <T>      the type of the Mesh
+     * @return the lazy Mesh
+     */
+    public static <T> LazyMesh<T> supplySyncDelayed(Supplier<? extends T> supplier, long delay) {
+        return new LazyMesh<>(MeshPipeline.<Void>builder().applySyncDelayed(ignored -> supplier.get(), delay));
+    }
+
+    /**
+     * Records a function to apply <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> applyAsync(Function<? super T, ? extends R> function) {
+        return record(claim().applyAsync(function));
+    }
+
+    /**
+     * Records a function to apply <strong>asynchronously</strong> after the given delay.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @param <R>      the type of the function's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> applyAsyncDelayed(Function<? super T, ? extends R> function, long delay) {
+        return record(claim().applyAsyncDelayed(function, delay));
+    }
+
+    /**
+     * Records a function to apply <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> applySync(Function<? super T, ? extends R> function) {
+        return record(claim().applySync(function));
+    }
+
+    /**
+     * Records a function to apply <strong>synchronously</strong> after the given delay.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @param <R>      the type of the function's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> applySyncDelayed(Function<? super T, ? extends R> function, long delay) {
+        return record(claim().applySyncDelayed(function, delay));
+    }
+
+    /**
+     * Records a runnable to run <strong>asynchronously</strong>.
+     *
+     * @param runnable the runnable to run
+     * @return the lazy Mesh continuing the chain
+     */
+    public LazyMesh<Void> runAsync(Runnable runnable) {
+        return record(claim().runAsync(runnable));
+    }
+
+    /**
+     * Records a runnable to run <strong>synchronously</strong>.
+     *
+     * @param runnable the runnable to run
+     * @return the lazy Mesh continuing the chain
+     */
+    public LazyMesh<Void> runSync(Runnable runnable) {
+        return record(claim().runSync(runnable));
+    }
+
+    /**
+     * Records a function to recover from a failure <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply to the failure
+     * @return the lazy Mesh continuing the chain
+     */
+    public LazyMesh<T> exceptionallyAsync(Function<Throwable, ? extends T> function) {
+        return record(claim().exceptionallyAsync(function));
+    }
+
+    /**
+     * Records a function to recover from a failure <strong>synchronously</strong>.
+     *
+     * @param function the function to apply to the failure
+     * @return the lazy Mesh continuing the chain
+     */
+    public LazyMesh<T> exceptionallySync(Function<Throwable, ? extends T> function) {
+        return record(claim().exceptionallySync(function));
+    }
+
+    /**
+     * Records a function, run <strong>asynchronously</strong>, whose Mesh the chain continues with.
+     *
+     * @param function the function to execute
+     * @param <R>      the type of the returned Mesh's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> composeAsync(Function<? super T, ? extends Mesh<R>> function) {
+        return record(claim().composeAsync(function));
+    }
+
+    /**
+     * Records a function, run <strong>synchronously</strong>, whose Mesh the chain continues with.
+     *
+     * @param function the function to execute
+     * @param <R>      the type of the returned Mesh's result
+     * @return the lazy Mesh continuing the chain
+     */
+    public <R> LazyMesh<R> composeSync(Function<? super T, ? extends Mesh<R>> function) {
+        return record(claim().composeSync(function));
+    }
+
+    /**
+     * Records a consumer to accept the value <strong>asynchronously</strong>, and starts the chain.
+     *
+     * @param consumer the consumer
+     * @return the started Mesh
+     */
+    public Mesh<Void> acceptAsync(Consumer<? super T> consumer) {
+        return record(claim().acceptAsync(consumer)).start();
+    }
+
+    /**
+     * Records a consumer to accept the value <strong>asynchronously</strong> after the given delay, and starts the chain.
+     *
+     * @param consumer the consumer
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to accept the value
+     * @return the started Mesh
+     */
+    public Mesh<Void> acceptAsyncDelayed(Consumer<? super T> consumer, long delay) {
+        return record(claim().acceptAsyncDelayed(consumer, delay)).start();
+    }
+
+    /**
+     * Records a consumer to accept the value <strong>synchronously</strong>, and starts the chain.
+     *
+     * @param consumer the consumer
+     * @return the started Mesh
+     */
+    public Mesh<Void> acceptSync(Consumer<? super T> consumer) {
+        return record(claim().acceptSync(consumer)).start();
+    }
+
+    /**
+     * Records a consumer to accept the value <strong>synchronously</strong> after the given delay, and starts the chain.
+     *
+     * @param consumer the consumer
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to accept the value
+     * @return the started Mesh
+     */
+    public Mesh<Void> acceptSyncDelayed(Consumer<? super T> consumer, long delay) {
+        return record(claim().acceptSyncDelayed(consumer, delay)).start();
+    }
+
+    /**
+     * Starts the recorded chain, if it hasn't been started yet.
+     *
+     * @return the Mesh which completes with the chain's value
+     */
+    public synchronized Mesh<T> start() {
+        if (started == null) {
+            if (builder == null) {
+                throw continued();
+            }
+
+            started = builder.build().run(null);
+            builder = null; // the recorded stages (and what they captured) now only live as long as the run
+        }
+
+        return started;
+    }
+
+    /**
+     * @return if the chain has been started
+     */
+    public synchronized boolean isStarted() {
+        return started != null;
+    }
+
+    /**
+     * Starts the chain, and waits for its value.
+     *
+     * @see Mesh#joinSync(long, TimeUnit)
+     */
+    public T joinSync(long timeout, TimeUnit unit) throws TimeoutException {
+        return start().joinSync(timeout, unit);
+    }
+
+    /**
+     * Starts the chain, and gets its backing future.
+     *
+     * @see Mesh#toCompletableFuture()
+     */
+    public CompletableFuture<T> toCompletableFuture() {
+        return start().toCompletableFuture();
+    }
+
+
+    /**
+     * Takes the recorded chain, so the next stage can be recorded on it by the lazy Mesh it is handed over to.
+     */
+    private synchronized MeshPipeline.Builder<Void, T> claim() {
+        if (started != null) {
+            throw new IllegalStateException("The LazyMesh has already been started, add stages to the Mesh returned by start()");
+        }
+
+        if (builder == null) {
+            throw continued();
+        }
+
+        MeshPipeline.Builder<Void, T> claimed = builder;
+        builder = null;
+
+        return claimed;
+    }
+
+    private static <R> LazyMesh<R> record(MeshPipeline.Builder<Void, R> builder) {
+        return new LazyMesh<>(builder);
+    }
+
+    private static IllegalStateException continued() {
+        return new IllegalStateException("The LazyMesh has already been continued, it can't branch, use the LazyMesh its stage returned");
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+import static us.figt.mesh.utils.ThreadContext.ASYNC;
+import static us.figt.mesh.utils.ThreadContext.SYNC;
+
+/**
+ * A Mesh of a primitive {@code long}, which passes its value between stages without boxing it.
+ * <p>
+ * Use {@link #fromMesh(Mesh)} and {@link #boxed()} to convert from and to a regular {@link Mesh}. A LongMesh can't be
+ * cancelled, and is not covered by {@link MeshScope}s or the leak detector, box it where those are needed.
+ *
+ * @author FigT
+ */
+@SuppressWarnings("unused")
+public final class LongMesh extends PrimitiveMesh {
+
+    private long value; // published by the write to state
+
+    private LongMesh() {
+    }
+
+    /**
+     * Creates a fresh LongMesh instance which you can then complete later.
+     *
+     * @return the LongMesh instance
+     */
+    public static LongMesh createMesh() {
+        return new LongMesh();
+    }
+
+    /**
+     * Creates an already 'completed' LongMesh instance with a supplied value.
+     *
+     * @param value the value to complete this LongMesh with
+     * @return the completed LongMesh instance
+     */
+    public static LongMesh createCompletedMesh(long value) {
+        LongMesh mesh = new LongMesh();
+        mesh.complete(value);
+
+        return mesh;
+    }
+
+    /**
+     * Creates a LongMesh which is supplied <strong>synchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied LongMesh instance
+     */
+    public static LongMesh createSupplyingSyncMesh(LongSupplier supplier) {
+        return supply(supplier, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates a LongMesh which is supplied <strong>synchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this LongMesh
+     * @return the supplied LongMesh instance
+     */
+    public static LongMesh createSupplyingSyncDelayedMesh(LongSupplier supplier, long delay) {
+        return supply(supplier, SYNC, delay);
+    }
+
+    /**
+     * Creates a LongMesh which is supplied <strong>asynchronously</strong>.
+     *
+     * @param supplier the value to supply
+     * @return the supplied LongMesh instance
+     */
+    public static LongMesh createSupplyingAsyncMesh(LongSupplier supplier) {
+        return supply(supplier, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Creates a LongMesh which is supplied <strong>asynchronously</strong> after a delay.
+     *
+     * @param supplier the value to supply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to supply this LongMesh
+     * @return the supplied LongMesh instance
+     */
+    public static LongMesh createSupplyingAsyncDelayedMesh(LongSupplier supplier, long delay) {
+        return supply(supplier, ASYNC, delay);
+    }
+
+    /**
+     * Creates a LongMesh which is completed with the (unboxed) result of the given Mesh.
+     *
+     * @param mesh the Mesh to convert
+     * @return the new LongMesh instance
+     */
+    public static LongMesh fromMesh(Mesh<? extends Number> mesh) {
+        return fromMesh(mesh, Number::longValue);
+    }
+
+    /**
+     * Creates a LongMesh which is completed with the result of the given Mesh, converted by the given function.
+     *
+     * @param mesh     the Mesh to convert
+     * @param function the function to convert the Mesh's result with
+     * @param <T>      the type of the Mesh
+     * @return the new LongMesh instance
+     */
+    public static <T> LongMesh fromMesh(Mesh<T> mesh, ToLongFunction<? super T> function) {
+        return fromMesh(mesh, new LongMesh(), (newMesh, value) -> newMesh.complete(function.applyAsLong(value)));
+    }
+
+    /**
+     * Creates a LongMesh which completes with the sum of the given LongMeshes, once all of them have completed.
+     *
+     * @param meshes the LongMeshes to sum
+     * @return the new LongMesh instance
+     */
+    public static LongMesh sum(LongMesh... meshes) {
+        return reduce(meshes, 0L, Long::sum);
+    }
+
+    /**
+     * Creates a LongMesh which completes with the sum of the given LongMeshes, once all of them have completed.
+     *
+     * @param meshes the LongMeshes to sum
+     * @return the new LongMesh instance
+     */
+    public static LongMesh sum(Collection<LongMesh> meshes) {
+        return sum(meshes.toArray(new LongMesh[0]));
+    }
+
+    /**
+     * Creates a LongMesh which completes with the largest value of the given LongMeshes, once all of them have completed.
+     * <p>
+     * If no LongMeshes are given, the returned LongMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the LongMeshes to compare
+     * @return the new LongMesh instance
+     */
+    public static LongMesh max(LongMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new LongMesh());
+        }
+
+        return reduce(meshes, Long.MIN_VALUE, Math::max);
+    }
+
+    /**
+     * Creates a LongMesh which completes with the largest value of the given LongMeshes, once all of them have completed.
+     *
+     * @param meshes the LongMeshes to compare
+     * @return the new LongMesh instance
+     */
+    public static LongMesh max(Collection<LongMesh> meshes) {
+        return max(meshes.toArray(new LongMesh[0]));
+    }
+
+    /**
+     * Creates a LongMesh which completes with the smallest value of the given LongMeshes, once all of them have completed.
+     * <p>
+     * If no LongMeshes are given, the returned LongMesh is completed with a {@link NoSuchElementException}.
+     *
+     * @param meshes the LongMeshes to compare
+     * @return the new LongMesh instance
+     */
+    public static LongMesh min(LongMesh... meshes) {
+        if (meshes.length == 0) {
+            return failedEmpty(new LongMesh());
+        }
+
+        return reduce(meshes, Long.MAX_VALUE, Math::min);
+    }
+
+    /**
+     * Creates a LongMesh which completes with the smallest value of the given LongMeshes, once all of them have completed.
+     *
+     * @param meshes the LongMeshes to compare
+     * @return the new LongMesh instance
+     */
+    public static LongMesh min(Collection<LongMesh> meshes) {
+        return min(meshes.toArray(new LongMesh[0]));
+    }
+
+    /**
+     * Creates a LongMesh which completes with the given LongMeshes' values combined by the given operator, once all of them have completed.
+     * <p>
+     * If any of the LongMeshes completes exceptionally, or the operator throws, the returned LongMesh is completed with that exception.
+     *
+     * @param meshes   the LongMeshes to reduce
+     * @param identity the identity value of the operator
+     * @param operator the associative operator to combine values with
+     * @return the new LongMesh instance
+     */
+    public static LongMesh reduce(LongMesh[] meshes, long identity, LongBinaryOperator operator) {
+        LongMesh newMesh = new LongMesh();
+
+        if (meshes.length == 0) {
+            newMesh.complete(identity);
+            return newMesh;
+        }
+
+        return reduce(meshes, new LongReduction(newMesh, meshes.length, identity, operator));
+    }
+
+
+    // ~~~ ASYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this LongMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh applyAsync(LongUnaryOperator function) {
+        return apply(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this LongMesh <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh applyAsyncDelayed(LongUnaryOperator function, long delay) {
+        return apply(function, ASYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this LongMesh's value into an object <strong>asynchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjAsync(LongFunction<? extends R> function) {
+        return mapToObj(function, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsync(LongConsumer consumer) {
+        return accept(consumer, ASYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>asynchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptAsyncDelayed(LongConsumer consumer, long delay) {
+        return accept(consumer, ASYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>asynchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh exceptionallyAsync(ToLongFunction<Throwable> function) {
+        return exceptionally(function, ASYNC);
+    }
+
+
+    // ~~~ SYNC BELOW ~~~
+
+
+    /**
+     * Applies a function to this LongMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh applySync(LongUnaryOperator function) {
+        return apply(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Applies a function to this LongMesh <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh applySyncDelayed(LongUnaryOperator function, long delay) {
+        return apply(function, SYNC, delay);
+    }
+
+    /**
+     * Applies a function which turns this LongMesh's value into an object <strong>synchronously</strong>.
+     *
+     * @param function the function to apply
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance with the applied function
+     */
+    public <R> Mesh<R> mapToObjSync(LongFunction<? extends R> function) {
+        return mapToObj(function, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSync(LongConsumer consumer) {
+        return accept(consumer, SYNC, NO_DElAY);
+    }
+
+    /**
+     * Executes an action <strong>synchronously</strong> with Void return type.
+     *
+     * @param consumer the action to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+     * @return the new Mesh instance with Void return type
+     */
+    public Mesh<Void> acceptSyncDelayed(LongConsumer consumer, long delay) {
+        return accept(consumer, SYNC, delay);
+    }
+
+    /**
+     * Executes an operation <strong>synchronously</strong> if an exception occurred.
+     *
+     * @param function the function to execute
+     * @return the new LongMesh instance with the applied function
+     */
+    public LongMesh exceptionallySync(ToLongFunction<Throwable> function) {
+        return exceptionally(function, SYNC);
+    }
+
+
+    /**
+     * If not already completed, completes this LongMesh with the given value.
+     *
+     * @param value the value to complete this LongMesh with
+     * @return true if this call completed the LongMesh
+     */
+    public boolean complete(long value) {
+        if (!startCompleting()) {
+            return false;
+        }
+
+        this.value = value;
+        finishCompleting();
+
+        return true;
+    }
+
+    /**
+     * Gets the value of this LongMesh if it has completed normally, or the given value otherwise.
+     *
+     * @param valueIfAbsent the value to return if this LongMesh has not completed normally
+     * @return the value
+     */
+    public long getNow(long valueIfAbsent) {
+        return isDone() && !isCompletedExceptionally() ? value : valueIfAbsent;
+    }
+
+    /**
+     * Converts this LongMesh to a regular Mesh, boxing its value once.
+     *
+     * @return the new Mesh instance
+     */
+    public Mesh<Long> boxed() {
+        return toMesh(() -> value);
+    }
+
+
+    private static LongMesh supply(LongSupplier supplier, ThreadContext threadContext, long delay) {
+        return supply(new LongMesh(), threadContext, delay, newMesh -> newMesh.complete(supplier.getAsLong()));
+    }
+
+    private LongMesh apply(LongUnaryOperator function, ThreadContext threadContext, long delay) {
+        return then(this, new LongMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.applyAsLong(source.value)));
+    }
+
+    private <R> Mesh<R> mapToObj(LongFunction<? extends R> function, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<R>createMesh(), threadContext, delay, (source, newMesh) -> newMesh.complete(function.apply(source.value)));
+    }
+
+    private Mesh<Void> accept(LongConsumer consumer, ThreadContext threadContext, long delay) {
+        return then(this, Mesh.<Void>createMesh(), threadContext, delay, (source, newMesh) -> {
+            consumer.accept(source.value);
+            newMesh.complete(null);
+        });
+    }
+
+    private LongMesh exceptionally(ToLongFunction<Throwable> function, ThreadContext threadContext) {
+        return recover(this, new LongMesh(), threadContext,
+                (source, newMesh) -> newMesh.complete(source.value),
+                (source, newMesh) -> newMesh.complete(function.applyAsLong(source.getThrowable())));
+    }
+
+
+    private static final class LongReduction extends Reduction<LongMesh> {
+
+        private final LongBinaryOperator operator;
+        private long accumulator;
+
+        private LongReduction(LongMesh target, int remaining, long identity, LongBinaryOperator operator) {
+            super(target, remaining);
+            this.accumulator = identity;
+            this.operator = operator;
+        }
+
+        @Override
+        void accumulate(LongMesh source) {
+            accumulator = operator.applyAsLong(accumulator, source.value);
+        }
+
+        @Override
+        void finish() {
+            target.complete(accumulator);
+        }
+    }
+}
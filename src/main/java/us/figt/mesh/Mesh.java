@@ -24,13 +24,25 @@
 
 package us.figt.mesh;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import org.bukkit.event.Event;
+import org.bukkit.event.player.PlayerEvent;
+import us.figt.mesh.scheduler.MeshTask;
 import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
 import us.figt.mesh.utils.ThreadContext;
 
+import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static us.figt.mesh.MeshRunnables.NO_DElAY;
@@ -41,24 +53,52 @@ import static us.figt.mesh.utils.ThreadContext.SYNC;
  * @author FigT
  */
 @SuppressWarnings("unused") // i don't want IntelliJ to yell at me
-public class Mesh<T> {
+public class Mesh<T> implements CompletionStage<T> {
 
-    private static boolean debugMode = false;
+    private static final Executor ASYNC_EXECUTOR = runnable -> MeshRunnables.run(runnable, ASYNC, NO_DElAY); // default executor of the CompletionStage *Async methods
 
+    private static final long JOIN_SYNC_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L); // one tick
 
-    private final CompletableFuture<T> completableFuture; // the backing CompletableFuture
+    private static final AtomicIntegerFieldUpdater<Mesh> DELAYED_SYNC_STAGES = AtomicIntegerFieldUpdater.newUpdater(Mesh.class, "delayedSyncStages");
+
+    private static volatile boolean debugMode = false;
+
+
+    private final MeshFuture<T> completableFuture; // the backing CompletableFuture
     private final AtomicBoolean hasBeenSupplied = new AtomicBoolean(false);
     private final AtomicBoolean isCancelled = new AtomicBoolean(false);
-
-    private Mesh(CompletableFuture<T> completableFuture) {
+    private volatile int delayedSyncStages = 0; // delayed sync stages which will complete this Mesh, see joinSync
+    private volatile MeshTask pendingTask = null; // the scheduled task which will complete this Mesh, if any
+    private volatile Mesh<?> upstream = null; // the Mesh this stage waits on until it completes, see joinSync
+    private final MeshScope scope; // the scope this Mesh belongs to, if any
+    private final boolean countsInScope; // if this Mesh counts toward its scope's maxInFlight, see MeshScope#call
+    private final MeshLeakDetector.Record leakRecord; // set if this Mesh was sampled by the leak detector
+
+    private Mesh(MeshFuture<T> completableFuture, MeshScope scope, boolean startsChain, boolean countsInScope) {
         this.completableFuture = completableFuture;
+        this.completableFuture.owner = this;
+        this.scope = scope;
+        this.countsInScope = countsInScope;
+        this.leakRecord = startsChain && !completableFuture.isDone() ? MeshLeakDetector.sample(completableFuture) : null;
+
+        if (scope != null && !completableFuture.isDone()) {
+            scope.track(this, countsInScope);
+        }
     }
 
-    private Mesh(CompletableFuture<T> completableFuture, boolean supplied, boolean cancelled) {
+    private Mesh(MeshFuture<T> completableFuture, MeshScope.Frame frame) {
+        this(completableFuture, frame == null ? null : frame.getScope(), true, frame != null && frame.countsChains());
+    }
+
+    private Mesh(MeshFuture<T> completableFuture) {
+        this(completableFuture, MeshScope.currentFrame());
+    }
+
+    private Mesh(MeshFuture<T> completableFuture, boolean supplied, boolean cancelled) {
         this(completableFuture);
 
-        this.hasBeenSupplied.set(supplied);
-        this.isCancelled.set(cancelled);
+        if (supplied) this.hasBeenSupplied.set(true);
+        if (cancelled) this.isCancelled.set(true);
     }
 
     // TODO: add more comments
@@ -71,7 +111,7 @@ public class Mesh<T> {
      * @return the completed Mesh instance
      */
     public static <T> Mesh<T> createCompletedMesh() {
-        Mesh<T> mesh = new Mesh<>(CompletableFuture.completedFuture(null));
+        Mesh<T> mesh = new Mesh<>(MeshFuture.completed(null));
         mesh.hasBeenSupplied.set(true);
 
         return mesh;
@@ -85,7 +125,7 @@ public class Mesh<T> {
      * @return the completed Mesh instance
      */
     public static <T> Mesh<T> createCompletedMesh(T value) {
-        Mesh<T> mesh = new Mesh<>(CompletableFuture.completedFuture(value));
+        Mesh<T> mesh = new Mesh<>(MeshFuture.completed(value));
         mesh.hasBeenSupplied.set(true);
 
         return mesh;
@@ -98,7 +138,7 @@ public class Mesh<T> {
      * @return the Mesh instance
      */
     public static <T> Mesh<T> createMesh() {
-        return new Mesh<>(new CompletableFuture<>());
+        return new Mesh<>(new MeshFuture<>());
     }
 
     /**
@@ -158,6 +198,11 @@ public class Mesh<T> {
 
     /**
      * Creates a Mesh based on the given Future.
+     * <p>
+     * No thread is blocked waiting for the Future: {@link CompletionStage}s and Guava {@link ListenableFuture}s notify the
+     * Mesh when they finish, and any other Future is watched by a single shared poller.
+     * <p>
+     * A future obtained from {@link #toCompletableFuture()} is turned back into its own Mesh, without creating a new stage.
      *
      * @param future the Future to base this Mesh on
      * @param <R>    the type of the given Future and this Mesh
@@ -166,14 +211,16 @@ public class Mesh<T> {
     public static <R> Mesh<R> fromFuture(Future<R> future) {
         // TODO: add comments to this method
 
+        if (future instanceof MeshFuture<?> && ((MeshFuture<R>) future).owner != null) {
+            return ((MeshFuture<R>) future).owner; // our own view, no need to copy anything
+        }
+
         if (future instanceof CompletableFuture<?>) {
-            return new Mesh<>(((CompletableFuture<R>) future).thenApply(Function.identity()), true, future.isCancelled());
+            return adopt((CompletableFuture<R>) future, true, future.isCancelled());
         }
 
         if (future instanceof CompletionStage<?>) {
-            CompletionStage<R> stage = (CompletionStage<R>) future;
-
-            return new Mesh<>(stage.toCompletableFuture().thenApply(Function.identity()));
+            return fromStage((CompletionStage<R>) future);
         }
 
         if (future.isDone()) {
@@ -181,11 +228,8 @@ public class Mesh<T> {
                 // if the future is done, just create a completed mesh based on the future's value
                 return createCompletedMesh(future.get());
             } catch (ExecutionException e) {
-                // if the computation threw an exception, create a new CompletableFuture
-                CompletableFuture<R> newFuture = new CompletableFuture<>();
-
-                // complete exceptionally using the ExecutionException thrown
-                newFuture.completeExceptionally(e);
+                // if the computation threw an exception, create a new future completed exceptionally using the ExecutionException thrown
+                MeshFuture<R> newFuture = MeshFuture.failed(e);
 
 
                 // return a new Mesh based on that future
@@ -197,8 +241,264 @@ public class Mesh<T> {
             }
         }
 
-        Mesh<R> newMesh = createMesh();
-        return newMesh.supplyCallableAsync(future::get);
+        Mesh<R> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+
+        if (future instanceof ListenableFuture<?>) {
+            // callback-style future, complete the mesh on whichever thread finishes the future
+            ((ListenableFuture<R>) future).addListener(() -> FuturePoller.completeFrom(future, newMesh), Runnable::run);
+        } else {
+            // plain future, have the shared poller complete the mesh when it's done
+            FuturePoller.watch(future, newMesh);
+        }
+
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh based on the given CompletionStage.
+     * <p>
+     * If the stage is a Mesh (or a Mesh's {@link #toCompletableFuture()} view), that Mesh is returned as-is.
+     *
+     * @param stage the CompletionStage to base this Mesh on
+     * @param <R>   the type of the given CompletionStage and this Mesh
+     * @return the Mesh instance
+     */
+    public static <R> Mesh<R> fromStage(CompletionStage<R> stage) {
+        if (stage instanceof Mesh<?>) {
+            return (Mesh<R>) stage;
+        }
+
+        if (stage instanceof Future<?>) {
+            return fromFuture((Future<R>) stage);
+        }
+
+        return adopt(stage, true, false);
+    }
+
+    /**
+     * Creates a Mesh which runs an asynchronous loop: while the condition holds for the current value, the body is run
+     * with it, and the value its Mesh completes with becomes the next value.
+     * <p>
+     * Unlike recursing via {@link #composeSync(Function)}, neither the stack nor memory grow with the amount of
+     * iterations. The condition and body run on whichever thread completed the previous iteration (the calling thread
+     * for the first one), so the body should dispatch its work via the usual Mesh methods. Cancelling the returned Mesh
+     * also cancels the iteration in flight.
+     *
+     * @param seed      the value of the first iteration
+     * @param condition the condition to keep looping while it holds
+     * @param body      the body of the loop
+     * @param <T>       the type of the loop's value
+     * @return the Mesh which completes with the value that ended the loop
+     */
+    public static <T> Mesh<T> loop(T seed, Predicate<? super T> condition, Function<? super T, ? extends Mesh<T>> body) {
+        Mesh<T> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+        new MeshRunnables.LoopRunnable<>(newMesh, seed, condition, body, true).run();
+
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh which runs the given body until the value its Mesh completes with satisfies the given predicate,
+     * e.g. to retry something until it succeeds.
+     * <p>
+     * See {@link #loop(Object, Predicate, Function)} for how the loop runs.
+     *
+     * @param body  the body of the loop
+     * @param until the predicate which ends the loop
+     * @param <T>   the type of the loop's value
+     * @return the Mesh which completes with the value that ended the loop
+     */
+    public static <T> Mesh<T> repeatUntil(Supplier<? extends Mesh<T>> body, Predicate<? super T> until) {
+        Mesh<T> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+        new MeshRunnables.LoopRunnable<T>(newMesh, null, value -> !until.test(value), ignored -> body.get(), false).run();
+
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh which makes attempts until one succeeds, following the given policy: failed attempts are retried
+     * after an exponential backoff (on the shared timer, no thread waits), until the policy's maximum amount of attempts
+     * is reached or it doesn't retry the failure, in which case the Mesh fails with the last failure.
+     *
+     * @param attempt makes an attempt, e.g. a call to a database
+     * @param policy  the retry policy
+     * @param <T>     the type of the Mesh
+     * @return the Mesh which completes with the value of the first successful attempt
+     */
+    public static <T> Mesh<T> retry(Supplier<? extends Mesh<T>> attempt, RetryPolicy policy) {
+        Mesh<T> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+        new MeshRetry<>(newMesh, attempt, policy).run();
+
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh which completes with the first of the given Meshes to complete successfully, and cancels the others
+     * once it has (or once the returned Mesh is cancelled). It only fails if all of them fail, with the last failure.
+     *
+     * @param meshes the Meshes to race
+     * @param <T>    the type of the Meshes
+     * @return the Mesh which completes with the winner's value
+     */
+    @SafeVarargs
+    public static <T> Mesh<T> race(Mesh<? extends T>... meshes) {
+        if (meshes.length == 0) {
+            throw new IllegalArgumentException("Cannot race no Meshes");
+        }
+
+        Mesh<T> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+        MeshRace<T> race = new MeshRace<>(newMesh);
+
+        for (Mesh<? extends T> mesh : meshes) {
+            race.add(mesh);
+        }
+
+        race.close();
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh which runs the given supplier <strong>asynchronously</strong>, and runs it a second time if the
+     * first attempt hasn't completed after the given delay (or as soon as it fails), completing with whichever attempt
+     * succeeds first and cancelling the other. Meant for backends with a long tail of slow calls.
+     *
+     * @param supplier the supplier to run, which must be safe to run twice
+     * @param delay    how long to wait for the first attempt before starting the second
+     * @param unit     the unit of the delay
+     * @param <T>      the type of the Mesh
+     * @return the Mesh which completes with the first successful attempt's value
+     */
+    public static <T> Mesh<T> hedge(Supplier<T> supplier, long delay, TimeUnit unit) {
+        return hedgeAfter(supplier, unit.toNanos(delay));
+    }
+
+    /**
+     * Creates a Mesh which hedges the given supplier like {@link #hedge(Supplier, long, TimeUnit)}, with the delay being
+     * the given percentile of the latencies recorded by the tracker. The latency of every attempt (including the ones
+     * which lose) is recorded in the tracker, and until it has enough of them nothing is hedged.
+     *
+     * @param supplier   the supplier to run, which must be safe to run twice
+     * @param tracker    the tracker of the supplier's latencies
+     * @param percentile the percentile of the latencies to hedge after, between 0 and 1 (e.g. 0.95)
+     * @param <T>        the type of the Mesh
+     * @return the Mesh which completes with the first successful attempt's value
+     */
+    public static <T> Mesh<T> hedge(Supplier<T> supplier, LatencyTracker tracker, double percentile) {
+        long delay = tracker.percentile(percentile, TimeUnit.NANOSECONDS);
+        Supplier<T> timed = () -> {
+            long start = System.nanoTime();
+
+            try {
+                return supplier.get();
+            } finally {
+                tracker.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+
+        return hedgeAfter(timed, delay);
+    }
+
+    private static <T> Mesh<T> hedgeAfter(Supplier<T> supplier, long delayNanos) {
+        Mesh<T> newMesh = new Mesh<>(new MeshFuture<>(), true, false);
+        MeshRace<T> race = new MeshRace<>(newMesh);
+        Mesh<T> first = newMesh.inScope(() -> createSupplyingAsyncMesh(supplier)); // the attempts don't count as chains
+        race.add(first);
+
+        if (delayNanos < 0L) { // the tracker doesn't know enough yet
+            race.close();
+            return newMesh;
+        }
+
+        AtomicBoolean hedged = new AtomicBoolean();
+        Runnable hedge = () -> {
+            if (hedged.compareAndSet(false, true) && !newMesh.completableFuture.isDone()) {
+                race.add(newMesh.inScope(() -> createSupplyingAsyncMesh(supplier))); // on the timer thread
+            }
+
+            race.close();
+        };
+
+        MeshTask timer = SchedulerUtil.getScheduler().schedule(hedge, delayNanos, TimeUnit.NANOSECONDS);
+        newMesh.completableFuture.whenComplete((value, throwable) -> timer.cancel());
+        first.completableFuture.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                hedge.run(); // no point waiting for the delay
+            }
+        });
+
+        return newMesh;
+    }
+
+    /**
+     * Creates a Mesh which completes with the next event of the given type which passes the given predicate, e.g. the
+     * next time a block is broken in an arena.
+     * <p>
+     * Every waiter on an event type shares a single listener, but a waiter without a key is checked against every event
+     * of its type, prefer {@link #awaitEvent(Class, UUID, Predicate, long, TimeUnit)} or
+     * {@link #awaitEvent(Class, Function, Object, Predicate, long, TimeUnit)} when waiting on something specific.
+     *
+     * @param eventClass the type of event, which must have its own handler list
+     * @param predicate  the predicate the event must pass, or null to accept any
+     * @param timeout    how long to wait before failing with a {@link TimeoutException}, 0 or less waits forever
+     * @param unit       the unit of the timeout
+     * @param <E>        the type of event
+     * @return the Mesh which completes with the event
+     */
+    public static <E extends Event> Mesh<E> awaitEvent(Class<E> eventClass, Predicate<? super E> predicate, long timeout, TimeUnit unit) {
+        return EventBridge.await(eventClass, null, null, predicate, timeout, unit);
+    }
+
+    /**
+     * Creates a Mesh which completes with the next event of the given type, fired for the given player, which passes
+     * the given predicate, e.g. the player's next chat message, or their quit.
+     *
+     * @param eventClass the type of event, which must have its own handler list
+     * @param playerId   the UUID of the player
+     * @param predicate  the predicate the event must pass, or null to accept any
+     * @param timeout    how long to wait before failing with a {@link TimeoutException}, 0 or less waits forever
+     * @param unit       the unit of the timeout
+     * @param <E>        the type of event
+     * @return the Mesh which completes with the event
+     */
+    public static <E extends PlayerEvent> Mesh<E> awaitEvent(Class<E> eventClass, UUID playerId, Predicate<? super E> predicate, long timeout, TimeUnit unit) {
+        return EventBridge.await(eventClass, EventBridge.PLAYER_KEY, playerId, predicate, timeout, unit);
+    }
+
+    /**
+     * Creates a Mesh which completes with the next event of the given type whose key, as given by the key function, is
+     * equal to the given key, and which passes the given predicate.
+     * <p>
+     * Waiters are indexed by key, so an event is only checked against the waiters on its own key. The key function is
+     * used to index them, so pass the same instance (e.g. a constant or a method reference) for waiters on the same key.
+     *
+     * @param eventClass  the type of event, which must have its own handler list
+     * @param keyFunction gets the key of an event
+     * @param key         the key to wait on
+     * @param predicate   the predicate the event must pass, or null to accept any
+     * @param timeout     how long to wait before failing with a {@link TimeoutException}, 0 or less waits forever
+     * @param unit        the unit of the timeout
+     * @param <E>         the type of event
+     * @param <K>         the type of the key
+     * @return the Mesh which completes with the event
+     */
+    public static <E extends Event, K> Mesh<E> awaitEvent(Class<E> eventClass, Function<? super E, ? extends K> keyFunction, K key,
+                                                          Predicate<? super E> predicate, long timeout, TimeUnit unit) {
+        return EventBridge.await(eventClass, Objects.requireNonNull(keyFunction), key, predicate, timeout, unit);
+    }
+
+    private static <R> Mesh<R> adopt(CompletionStage<R> stage, boolean supplied, boolean cancelled) {
+        Mesh<R> newMesh = new Mesh<>(new MeshFuture<>(), supplied, cancelled);
+
+        // a single dependent of the foreign stage, so it can't complete (or obtrude) our state
+        stage.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                newMesh.completableFuture.completeInternal(value);
+            } else {
+                newMesh.completableFuture.completeExceptionallyInternal(throwable);
+            }
+        });
+
+        return newMesh;
     }
 
 
@@ -236,6 +536,32 @@ public class Mesh<T> {
         return apply(function, ASYNC, NO_DElAY);
     }
 
+    /**
+     * Applies a function to this Mesh <strong>asynchronously</strong>, retrying it according to the given policy when it fails.
+     *
+     * @param function the function to apply
+     * @param policy   the retry policy
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance, completed with the result of the first successful attempt
+     * @see #retry(Supplier, RetryPolicy)
+     */
+    public <R> Mesh<R> applyAsync(Function<? super T, ? extends R> function, RetryPolicy policy) {
+        return composeStage(null, value -> retry(() -> createSupplyingAsyncMesh(() -> function.apply(value)), policy));
+    }
+
+    /**
+     * Applies a function to this Mesh <strong>asynchronously</strong>, once the given bulkhead has a slot for it.
+     *
+     * @param function the function to apply
+     * @param bulkhead the bulkhead of the resource the function uses
+     * @param <R>      the type of the function's result
+     * @return the new Mesh instance, which fails if the bulkhead is full
+     * @see Bulkhead#call(Supplier)
+     */
+    public <R> Mesh<R> applyAsync(Function<? super T, ? extends R> function, Bulkhead bulkhead) {
+        return composeStage(null, value -> bulkhead.call(() -> createSupplyingAsyncMesh(() -> function.apply(value))));
+    }
+
     /**
      * Executes an action <strong>asynchronously</strong> with Void return type.
      *
@@ -528,6 +854,243 @@ public class Mesh<T> {
     }
 
 
+    // ~~~ COMPLETIONSTAGE BELOW ~~~
+    // these follow CompletableFuture's rules: the plain methods run on whichever thread completes the previous stage,
+    // and the *Async methods without an Executor run asynchronously via the scheduler
+
+
+    @Override
+    public <U> Mesh<U> thenApply(Function<? super T, ? extends U> fn) {
+        return stage(null, false, (value, throwable) -> fn.apply(value));
+    }
+
+    @Override
+    public <U> Mesh<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return thenApplyAsync(fn, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U> Mesh<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return stage(Objects.requireNonNull(executor), false, (value, throwable) -> fn.apply(value));
+    }
+
+    @Override
+    public Mesh<Void> thenAccept(Consumer<? super T> action) {
+        return stage(null, false, (value, throwable) -> {
+            action.accept(value);
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return thenAcceptAsync(action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return stage(Objects.requireNonNull(executor), false, (value, throwable) -> {
+            action.accept(value);
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> thenRun(Runnable action) {
+        return stage(null, false, (value, throwable) -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> thenRunAsync(Runnable action) {
+        return thenRunAsync(action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<Void> thenRunAsync(Runnable action, Executor executor) {
+        return stage(Objects.requireNonNull(executor), false, (value, throwable) -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public <U, V> Mesh<V> thenCombine(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return both(null, other, fn);
+    }
+
+    @Override
+    public <U, V> Mesh<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return thenCombineAsync(other, fn, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U, V> Mesh<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        return both(Objects.requireNonNull(executor), other, fn);
+    }
+
+    @Override
+    public <U> Mesh<Void> thenAcceptBoth(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return both(null, other, (value, otherValue) -> {
+            action.accept(value, otherValue);
+            return null;
+        });
+    }
+
+    @Override
+    public <U> Mesh<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return thenAcceptBothAsync(other, action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U> Mesh<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return both(Objects.requireNonNull(executor), other, (value, otherValue) -> {
+            action.accept(value, otherValue);
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return both(null, other, (value, otherValue) -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterBothAsync(other, action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return both(Objects.requireNonNull(executor), other, (value, otherValue) -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public <U> Mesh<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return either(null, other, fn);
+    }
+
+    @Override
+    public <U> Mesh<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return applyToEitherAsync(other, fn, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U> Mesh<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return either(Objects.requireNonNull(executor), other, fn);
+    }
+
+    @Override
+    public Mesh<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return either(null, other, value -> {
+            action.accept(value);
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return acceptEitherAsync(other, action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return either(Objects.requireNonNull(executor), other, value -> {
+            action.accept(value);
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return either(null, (CompletionStage<?>) other, value -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public Mesh<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterEitherAsync(other, action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return either(Objects.requireNonNull(executor), (CompletionStage<?>) other, value -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    public <U> Mesh<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return composeStage(null, fn);
+    }
+
+    @Override
+    public <U> Mesh<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return thenComposeAsync(fn, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U> Mesh<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        return composeStage(Objects.requireNonNull(executor), fn);
+    }
+
+    @Override
+    public Mesh<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return stage(null, true, (value, throwable) -> throwable == null ? value : fn.apply(throwable));
+    }
+
+    @Override
+    public Mesh<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return stage(null, true, whenCompleteFunction(action));
+    }
+
+    @Override
+    public Mesh<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return whenCompleteAsync(action, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public Mesh<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return stage(Objects.requireNonNull(executor), true, whenCompleteFunction(action));
+    }
+
+    @Override
+    public <U> Mesh<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return stage(null, true, fn);
+    }
+
+    @Override
+    public <U> Mesh<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return handleAsync(fn, ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public <U> Mesh<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return stage(Objects.requireNonNull(executor), true, fn);
+    }
+
+
+    /**
+     * Cancels this Mesh if it has not completed yet: its scheduled task (if any) is cancelled, and it is completed with a
+     * {@link CancellationException}, which its dependents are completed with in turn.
+     *
+     * @return true if this call cancelled the Mesh
+     */
+    public boolean cancel() {
+        return cancel(new CancellationException("The Mesh was cancelled"));
+    }
+
     /**
      * If not already completed or cancelled, completes this Mesh with the given value.
      *
@@ -535,7 +1098,7 @@ public class Mesh<T> {
      */
     public void complete(T value) {
         if (!isCancelled.get()) {
-            completableFuture.complete(value);
+            completableFuture.completeInternal(value);
         }
     }
 
@@ -546,17 +1109,201 @@ public class Mesh<T> {
      */
     public void completeExceptionally(Throwable throwable) {
         if (!isCancelled.get()) {
-            completableFuture.completeExceptionally(throwable);
+            completableFuture.completeExceptionallyInternal(throwable);
         }
 
-        if (Mesh.debugMode) PluginUtil.debugException(throwable); // debug exception
+        if (Mesh.debugMode) MeshExceptionReporter.report(throwable); // debug exception
     }
 
 
+    /**
+     * Returns the CompletableFuture backing this Mesh, without creating a new stage.
+     * <p>
+     * The returned future is a read-only view: completing, obtruding or cancelling it throws an {@link UnsupportedOperationException}.
+     * This used to return a copy, which could be completed or cancelled without affecting the Mesh: complete or cancel
+     * the Mesh itself ({@link #complete(Object)}, {@link #cancel()}) instead, or make a copy of the view (e.g. with
+     * {@code thenApply(Function.identity())}) when a future of your own is needed.
+     *
+     * @return the CompletableFuture view of this Mesh
+     */
+    @Override
     public CompletableFuture<T> toCompletableFuture() {
-        return completableFuture.thenApply(Function.identity());
+        return completableFuture;
+    }
+
+
+    /**
+     * Waits for this Mesh to complete and returns its value, for the (rare) sync code paths which can't continue without it.
+     * <p>
+     * On the main thread, the SYNC work queued by Meshes is run while waiting, so chains with SYNC stages can still
+     * complete. If the Mesh, or a pending stage it (transitively) depends on, is waiting for a delayed SYNC task (which
+     * can't run while the main thread is blocked) a {@link MeshDeadlockException} is thrown right away, instead of
+     * freezing the server until the timeout. Only the stages this Mesh was created from are followed, not the Meshes
+     * returned by compose functions or the other side of a combine, a deadlock there still ends with the timeout.
+     * <p>
+     * Off the main thread this simply parks until the Mesh completes.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the value of this Mesh
+     * @throws TimeoutException      if the Mesh did not complete in time
+     * @throws CompletionException   if the Mesh completed exceptionally (or the wait was interrupted)
+     * @throws MeshDeadlockException if called on the main thread, and the Mesh can't complete while the main thread waits
+     */
+    public T joinSync(long timeout, TimeUnit unit) throws TimeoutException {
+        if (ThreadContext.getThreadContext(Thread.currentThread()) != SYNC) {
+            try {
+                return completableFuture.get(timeout, unit);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread mainThread = Thread.currentThread();
+        Thread previousWaiter = SyncQueue.setWaiter(mainThread);
+
+        try {
+            if (!completableFuture.isDone()) {
+                completableFuture.whenComplete((value, throwable) -> LockSupport.unpark(mainThread));
+            }
+
+            while (!completableFuture.isDone()) {
+                if (MeshRunnables.runTrampolined() + SyncQueue.runPending() > 0) {
+                    continue; // help out, then check again
+                }
+
+                if (waitsOnDelayedSync()) {
+                    throw new MeshDeadlockException("Waiting for this Mesh on the main thread would deadlock: it depends on a delayed sync stage, which can't run while the main thread is blocked");
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException(describeStall());
+                }
+
+                LockSupport.parkNanos(this, Math.min(remaining, JOIN_SYNC_RECHECK_NANOS)); // woken early by new sync work or completion
+            }
+        } finally {
+            SyncQueue.setWaiter(previousWaiter);
+        }
+
+        return completableFuture.join();
+    }
+
+
+    /**
+     * Checks if this Mesh, or one of the pending stages it was created from, is waiting for a delayed sync task.
+     */
+    private boolean waitsOnDelayedSync() {
+        for (Mesh<?> mesh = this; mesh != null && !mesh.completableFuture.isDone(); mesh = mesh.upstream) {
+            if (mesh.delayedSyncStages > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String describeStall() {
+        int delayedSync = MeshRunnables.getDelayedSyncPending();
+
+        if (MeshRunnables.getAsyncInFlight() > 0 || FuturePoller.getWatchedCount() > 0 || !SyncQueue.isEmpty()) {
+            return "Mesh did not complete in time";
+        }
+
+        if (delayedSync > 0) {
+            return "Mesh did not complete in time, likely deadlocked: nothing was in flight except " + delayedSync
+                    + " delayed sync task(s), which can't run while the main thread is blocked";
+        }
+
+        return "Mesh did not complete in time, and no Mesh work was in flight (was it ever supplied?)";
+    }
+
+    boolean cancel(Throwable reason) {
+        if (completableFuture.isDone() || !isCancelled.compareAndSet(false, true)) {
+            return false;
+        }
+
+        MeshTask task = pendingTask;
+        if (task != null) {
+            task.cancel(); // drop the task (and what it references) from the scheduler
+        }
+
+        return completableFuture.completeExceptionallyInternal(reason);
+    }
+
+    /**
+     * Remembers the task which was scheduled to complete this Mesh, so it can be cancelled.
+     *
+     * @param task the scheduled task
+     */
+    void setPendingTask(MeshTask task) {
+        pendingTask = task;
+
+        if (completableFuture.isDone()) {
+            pendingTask = null;
+
+            if (isCancelled.get()) {
+                task.cancel(); // cancelled while the task was being scheduled
+            }
+        }
+    }
+
+    /**
+     * Called by the backing future once it has completed.
+     */
+    void onCompleted() {
+        pendingTask = null;
+        upstream = null;
+
+        if (leakRecord != null) {
+            leakRecord.completed();
+        }
+
+        if (scope != null) {
+            scope.untrack(this, countsInScope);
+        }
+    }
+
+    /**
+     * Runs the given work of this Mesh in its scope, see {@link MeshScope#enter(MeshScope)}.
+     *
+     * @param work the work to run
+     * @param <R>  the type of the work's result
+     * @return the work's result
+     */
+    <R> R inScope(Supplier<R> work) {
+        MeshScope.Frame previous = MeshScope.enter(scope);
+
+        try {
+            return work.get();
+        } finally {
+            MeshScope.exit(previous);
+        }
+    }
+
+    MeshScope getScope() {
+        return scope;
+    }
+
+    private <R> Mesh<R> dependent() {
+        Mesh<R> newMesh = new Mesh<>(new MeshFuture<>(), scope, false, false); // stages belong to the scope of the Mesh they depend on
+        newMesh.upstream = this;
+
+        return newMesh;
+    }
+
+    void delayedSyncScheduled() {
+        DELAYED_SYNC_STAGES.incrementAndGet(this);
     }
 
+    void delayedSyncFinished() {
+        DELAYED_SYNC_STAGES.decrementAndGet(this);
+    }
 
     private void setHasBeenSupplied() {
         if (!hasBeenSupplied.compareAndSet(false, true)) {
@@ -573,7 +1320,7 @@ public class Mesh<T> {
     }
 
     private <R> Mesh<R> apply(Function<? super T, ? extends R> function, ThreadContext threadContext, long delay) {
-        Mesh<R> newMesh = new Mesh<>(new CompletableFuture<>());
+        Mesh<R> newMesh = dependent();
 
         completableFuture.whenComplete((value, throwable) -> {
             if (throwable == null) {
@@ -587,7 +1334,7 @@ public class Mesh<T> {
     }
 
     private <R> Mesh<R> applyRun(Runnable runnable, ThreadContext threadContext, long delay) {
-        Mesh<R> newMesh = new Mesh<>(new CompletableFuture<>());
+        Mesh<R> newMesh = dependent();
 
         completableFuture.whenComplete((value, throwable) -> {
             if (throwable == null) {
@@ -601,7 +1348,7 @@ public class Mesh<T> {
     }
 
     <R> Mesh<R> accept(Consumer<T> consumer, ThreadContext threadContext, long delay) {
-        Mesh<R> newMesh = new Mesh<>(new CompletableFuture<>());
+        Mesh<R> newMesh = dependent();
 
         completableFuture.whenComplete((value, throwable) -> {
             if (throwable == null) {
@@ -615,7 +1362,7 @@ public class Mesh<T> {
     }
 
     private Mesh<T> exceptionally(Function<Throwable, ? extends T> function, ThreadContext threadContext, long delay) {
-        Mesh<T> newMesh = new Mesh<>(new CompletableFuture<>());
+        Mesh<T> newMesh = dependent();
 
         completableFuture.whenComplete((value, throwable) -> {
             if (throwable == null) {
@@ -629,7 +1376,7 @@ public class Mesh<T> {
     }
 
     private <R> Mesh<R> compose(Function<? super T, ? extends Mesh<R>> function, ThreadContext threadContext, long delay) {
-        Mesh<R> newMesh = new Mesh<>(new CompletableFuture<>());
+        Mesh<R> newMesh = dependent();
 
         completableFuture.whenComplete((value, throwable) -> {
             if (throwable == null) {
@@ -642,6 +1389,134 @@ public class Mesh<T> {
         return newMesh;
     }
 
+    private <U> Mesh<U> stage(Executor executor, boolean handlesFailure, BiFunction<? super T, Throwable, ? extends U> fn) {
+        Mesh<U> newMesh = dependent();
+
+        completableFuture.whenComplete((value, throwable) -> {
+            if (throwable != null && !handlesFailure) {
+                newMesh.completeExceptionally(throwable);
+                return;
+            }
+
+            execute(executor, newMesh, () -> newMesh.complete(fn.apply(value, throwable)));
+        });
+
+        return newMesh;
+    }
+
+    private <U, V> Mesh<V> both(Executor executor, CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        Mesh<V> newMesh = dependent();
+
+        completableFuture.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                newMesh.completeExceptionally(throwable);
+                return;
+            }
+
+            onComplete(other, (otherValue, otherThrowable) -> {
+                if (otherThrowable != null) {
+                    newMesh.completeExceptionally(otherThrowable);
+                    return;
+                }
+
+                execute(executor, newMesh, () -> newMesh.complete(fn.apply(value, otherValue)));
+            });
+        });
+
+        return newMesh;
+    }
+
+    private <U, R> Mesh<U> either(Executor executor, CompletionStage<? extends R> other, Function<? super R, U> fn) {
+        Mesh<U> newMesh = dependent();
+        newMesh.upstream = null; // can complete through the other stage as well
+        AtomicBoolean claimed = new AtomicBoolean(false);
+
+        BiConsumer<R, Throwable> first = (value, throwable) -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return; // the other one got here first
+            }
+
+            if (throwable != null) {
+                newMesh.completeExceptionally(throwable);
+            } else {
+                execute(executor, newMesh, () -> newMesh.complete(fn.apply(value)));
+            }
+        };
+
+        onComplete((CompletionStage<R>) this, first);
+        onComplete(other, first);
+
+        return newMesh;
+    }
+
+    private <U> Mesh<U> composeStage(Executor executor, Function<? super T, ? extends CompletionStage<U>> fn) {
+        Mesh<U> newMesh = dependent();
+
+        completableFuture.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                newMesh.completeExceptionally(throwable);
+                return;
+            }
+
+            execute(executor, newMesh, () -> {
+                onComplete(fn.apply(value), (composedValue, composedThrowable) -> {
+                    if (composedThrowable == null) {
+                        newMesh.complete(composedValue);
+                    } else {
+                        newMesh.completeExceptionally(composedThrowable);
+                    }
+                });
+            });
+        });
+
+        return newMesh;
+    }
+
+    private static <R> void onComplete(CompletionStage<? extends R> stage, BiConsumer<? super R, ? super Throwable> action) {
+        if (stage instanceof Mesh<?>) {
+            ((Mesh<? extends R>) stage).completableFuture.whenComplete(action); // skip creating a new Mesh stage
+        } else {
+            stage.whenComplete(action);
+        }
+    }
+
+    private static <T> BiFunction<T, Throwable, T> whenCompleteFunction(BiConsumer<? super T, ? super Throwable> action) {
+        return (value, throwable) -> {
+            action.accept(value, throwable);
+
+            if (throwable != null) {
+                throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+
+            return value;
+        };
+    }
+
+    private static void execute(Executor executor, Mesh<?> mesh, Runnable runnable) {
+        Runnable guarded = () -> {
+            MeshScope.Frame previous = MeshScope.enter(mesh.scope);
+
+            try {
+                runnable.run();
+            } catch (Throwable throwable) {
+                mesh.completeExceptionally(throwable);
+            } finally {
+                MeshScope.exit(previous);
+            }
+        };
+
+        if (executor == null) {
+            guarded.run(); // run on the completing thread
+            return;
+        }
+
+        try {
+            executor.execute(guarded);
+        } catch (Throwable throwable) {
+            mesh.completeExceptionally(throwable);
+        }
+    }
+
     private Mesh<T> supplyCallable(Callable<T> callable, ThreadContext threadContext, long delay) {
         setHasBeenSupplied();
         MeshRunnables.run(new MeshRunnables.CallableRunnable<>(this, callable), threadContext, delay);
@@ -661,6 +1536,10 @@ public class Mesh<T> {
         return completableFuture;
     }
 
+    static boolean isDebugMode() {
+        return debugMode;
+    }
+
     /**
      * Sets Mesh's debug mode to the specified value.
      *
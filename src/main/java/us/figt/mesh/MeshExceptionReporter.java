@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Reports the exceptions Meshes fail with while debug mode is enabled, without blocking the thread which failed.
+ * <p>
+ * An exception is only reported once, no matter how many stages of its chain it passes through (best effort: the
+ * reported exceptions are remembered in a fixed-size table, where a newer exception can evict an older one). Reported
+ * exceptions are queued and logged from an async thread, and exceptions with the same fingerprint (their type and where they were
+ * thrown) are rate limited: once the limit is reached they are only counted, and the count is logged with the next
+ * report which gets through.
+ *
+ * @author FigT
+ */
+public final class MeshExceptionReporter {
+
+    private static final int MAX_QUEUED = 1024;
+    private static final int FINGERPRINT_FRAMES = 4;
+    private static final int SEEN_SLOTS = 4096; // a power of two
+
+    // exceptions already reported, indexed by identity hash since Throwable doesn't override equals, lock-free and weak
+    private static final AtomicReferenceArray<WeakReference<Throwable>> seen = new AtomicReferenceArray<>(SEEN_SLOTS);
+    private static final Queue<Throwable> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicBoolean draining = new AtomicBoolean();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    private static volatile int permitsPerWindow = 1;
+    private static volatile long windowNanos = TimeUnit.SECONDS.toNanos(10L);
+    private static volatile BiConsumer<String, Throwable> sink = PluginUtil::logException;
+
+    private MeshExceptionReporter() {
+        throw new AssertionError("Utility class cannot be instantiated"); // seal
+    }
+
+    /**
+     * Queues the given exception to be reported, unless it already has been.
+     *
+     * @param throwable the exception
+     */
+    public static void report(Throwable throwable) {
+        throwable = unwrap(throwable);
+
+        if (!markSeen(throwable)) {
+            return; // already reported further up the chain
+        }
+
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+
+        queue.add(throwable);
+
+        if (draining.compareAndSet(false, true)) {
+            try {
+                SchedulerUtil.getScheduler().runAsync(MeshExceptionReporter::drain, 0L);
+            } catch (RuntimeException e) {
+                drain(); // the scheduler refused (e.g. the plugin is disabling), so this is our last chance to report
+            }
+        }
+    }
+
+    /**
+     * Sets how many exceptions with the same fingerprint are logged per window, the rest are only counted.
+     *
+     * @param permits how many exceptions are logged per window
+     * @param window  the length of the window
+     * @param unit    the unit of the window
+     */
+    public static void setRateLimit(int permits, long window, TimeUnit unit) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be at least 1");
+        }
+
+        MeshExceptionReporter.permitsPerWindow = permits;
+        MeshExceptionReporter.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Sets where reports are written, by default they are logged as warnings by the plugin's logger.
+     *
+     * @param sink the sink, receiving the message and the exception, or null to go back to logging
+     */
+    public static void setSink(BiConsumer<String, Throwable> sink) {
+        MeshExceptionReporter.sink = sink == null ? PluginUtil::logException : sink;
+    }
+
+    /**
+     * @return how many times each fingerprint has been seen (including the rate limited ones), keyed by fingerprint
+     */
+    public static Map<String, Long> getCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        fingerprints.forEach((key, fingerprint) -> counts.put(key, fingerprint.total));
+
+        return counts;
+    }
+
+    /**
+     * @return how many exceptions were not reported because too many were queued at once
+     */
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return how many reports could not be written because the sink threw
+     */
+    public static long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Forgets the counts and rate limits of every fingerprint.
+     */
+    public static void reset() {
+        fingerprints.clear();
+        dropped.set(0L);
+        failed.set(0L);
+    }
+
+    /**
+     * Remembers the given exception as reported.
+     *
+     * @param throwable the exception
+     * @return false if it already was
+     */
+    private static boolean markSeen(Throwable throwable) {
+        int slot = System.identityHashCode(throwable) & (SEEN_SLOTS - 1);
+        WeakReference<Throwable> marker = null;
+
+        while (true) {
+            WeakReference<Throwable> current = seen.get(slot);
+
+            if (current != null && current.get() == throwable) {
+                return false;
+            }
+
+            if (marker == null) {
+                marker = new WeakReference<>(throwable);
+            }
+
+            if (seen.compareAndSet(slot, current, marker)) {
+                return true; // evicts whatever was in the slot
+            }
+        }
+    }
+
+    private static void drain() {
+        do {
+            for (Throwable throwable; (throwable = queue.poll()) != null; ) {
+                queued.decrementAndGet();
+
+                try {
+                    log(throwable);
+                } catch (Throwable failure) {
+                    // a broken sink shouldn't stop reporting, say so once (in case the plugin's logger is what's broken)
+                    if (failed.incrementAndGet() == 1L) {
+                        try {
+                            PluginUtil.logException("Mesh-Debug - The exception sink threw an exception, failed reports are only counted from now on", failure);
+                        } catch (Throwable ignored) {
+                            // nowhere left to report it, it's counted
+                        }
+                    }
+                }
+            }
+
+            draining.set(false);
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true)); // catch anything queued while we were finishing up
+    }
+
+    private static void log(Throwable throwable) {
+        String key = fingerprint(throwable);
+        Fingerprint fingerprint = fingerprints.computeIfAbsent(key, k -> new Fingerprint());
+        long suppressed;
+
+        synchronized (fingerprint) { // only the draining thread gets here, this just publishes the counts
+            fingerprint.total++;
+
+            long now = System.nanoTime();
+            if (now - fingerprint.windowStart >= windowNanos) {
+                fingerprint.windowStart = now;
+                fingerprint.permitsUsed = 0;
+            }
+
+            if (fingerprint.permitsUsed >= permitsPerWindow) {
+                fingerprint.suppressed++;
+                return;
+            }
+
+            fingerprint.permitsUsed++;
+            suppressed = fingerprint.suppressed;
+            fingerprint.suppressed = 0L;
+        }
+
+        String message = "Mesh-Debug - Caught a " + throwable.getClass().getSimpleName();
+        if (suppressed > 0L) {
+            message += " (" + suppressed + " similar suppressed since the last report)";
+        }
+
+        sink.accept(message, throwable);
+    }
+
+    private static String fingerprint(Throwable throwable) {
+        StringBuilder builder = new StringBuilder(throwable.getClass().getName());
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+
+        for (int i = 0; i < stackTrace.length && i < FINGERPRINT_FRAMES; i++) {
+            builder.append(" @ ").append(stackTrace[i]);
+        }
+
+        return builder.toString();
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        // the wrappers added by CompletableFuture are new for every stage, so report what they wrap instead
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+
+        return throwable;
+    }
+
+
+    private static final class Fingerprint {
+        private volatile long total = 0L;
+        private long windowStart = System.nanoTime();
+        private int permitsUsed = 0;
+        private long suppressed = 0L;
+    }
+}
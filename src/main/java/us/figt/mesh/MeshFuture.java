@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The CompletableFuture backing a {@link Mesh}, which is also handed out as-is by {@link Mesh#toCompletableFuture()}.
+ * <p>
+ * Since no copy is made, everything which could complete this future from the outside (completing, obtruding and
+ * cancelling) throws an {@link UnsupportedOperationException}; only the owning Mesh can complete it.
+ * <p>
+ * Blocking on it from within a SYNC stage which runs inline on the main thread first runs the SYNC work which was
+ * queued behind that stage, so e.g. {@code join()} on a SYNC Mesh created by the stage completes instead of hanging.
+ *
+ * @author FigT
+ */
+final class MeshFuture<T> extends CompletableFuture<T> {
+
+    Mesh<T> owner = null; // the Mesh this future backs, set once by the Mesh
+
+    static <T> MeshFuture<T> completed(T value) {
+        MeshFuture<T> future = new MeshFuture<>();
+        future.completeInternal(value);
+
+        return future;
+    }
+
+    static <T> MeshFuture<T> failed(Throwable throwable) {
+        MeshFuture<T> future = new MeshFuture<>();
+        future.completeExceptionallyInternal(throwable);
+
+        return future;
+    }
+
+    boolean completeInternal(T value) {
+        return onCompleted(super.complete(value));
+    }
+
+    boolean completeExceptionallyInternal(Throwable throwable) {
+        return onCompleted(super.completeExceptionally(throwable));
+    }
+
+    private boolean onCompleted(boolean completed) {
+        if (completed && owner != null) {
+            owner.onCompleted();
+        }
+
+        return completed;
+    }
+
+    @Override
+    public T join() {
+        MeshRunnables.runTrampolinedUntil(this);
+        return super.join();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        MeshRunnables.runTrampolinedUntil(this);
+        return super.get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        MeshRunnables.runTrampolinedUntil(this);
+        return super.get(timeout, unit);
+    }
+
+    @Override
+    public boolean complete(T value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable throwable) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        throw readOnly();
+    }
+
+    @Override
+    public void obtrudeValue(T value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void obtrudeException(Throwable throwable) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("This future is a read-only view of a Mesh, complete or cancel the Mesh itself instead");
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * An optional detector for Meshes which are never completed, e.g. one from {@link Mesh#createMesh()} which nothing supplies.
+ * <p>
+ * When enabled, a sample of the pending Meshes which start a chain is tracked through weak references (along with
+ * where they were created), the stages depending on them are not tracked since they only stall because of their root. Twice per second the detector reports tracked Meshes which either became unreachable without
+ * completing (so their dependents never ran), or have stayed incomplete for longer than the threshold (so their
+ * dependents, and whatever those captured, are still being kept around).
+ * <p>
+ * Meshes which belong to a {@link MeshScope} are strongly referenced by it until they complete (or the scope is
+ * closed), so they never become unreachable: a scoped Mesh which is never completed is only reported as stalled.
+ * <p>
+ * The sweeps are timed by the shared timer, but run as async tasks, so they don't delay timeouts and backoffs.
+ *
+ * @author FigT
+ */
+public final class MeshLeakDetector {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 500L;
+
+    private static final ReferenceQueue<MeshFuture<?>> queue = new ReferenceQueue<>();
+    private static final Set<Record> records = ConcurrentHashMap.newKeySet();
+
+    private static volatile boolean enabled = false;
+    private static volatile int sampleRate = 1;
+    private static volatile long thresholdNanos = TimeUnit.MINUTES.toNanos(1L);
+    private static volatile Consumer<? super Leak> reporter = MeshLeakDetector::log;
+    private static volatile boolean sweeping = false;
+
+    private MeshLeakDetector() {
+        throw new AssertionError("Utility class cannot be instantiated"); // seal
+    }
+
+    /**
+     * Enables the leak detector.
+     *
+     * @param sampleRate track 1 in every sampleRate pending Meshes (1 tracks all of them)
+     * @param threshold  how long a tracked Mesh may stay incomplete before it is reported
+     * @param unit       the unit of the threshold
+     */
+    public static synchronized void enable(int sampleRate, long threshold, TimeUnit unit) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be at least 1");
+        }
+
+        MeshLeakDetector.sampleRate = sampleRate;
+        MeshLeakDetector.thresholdNanos = unit.toNanos(threshold);
+        MeshLeakDetector.enabled = true;
+
+        if (!sweeping) {
+            sweeping = true;
+            SchedulerUtil.getScheduler().schedule(MeshLeakDetector::startSweep, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Disables the leak detector and forgets every tracked Mesh.
+     */
+    public static synchronized void disable() {
+        enabled = false;
+        records.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets what is done with the detected leaks, by default they are logged as warnings.
+     *
+     * @param reporter the reporter, or null to go back to logging
+     */
+    public static void setReporter(Consumer<? super Leak> reporter) {
+        MeshLeakDetector.reporter = reporter == null ? MeshLeakDetector::log : reporter;
+    }
+
+    /**
+     * @return the amount of Meshes currently tracked
+     */
+    public static int getTrackedCount() {
+        return records.size();
+    }
+
+    /**
+     * Called when a pending Mesh is created.
+     *
+     * @param future the backing future of the Mesh
+     * @return the record which tracks the Mesh, or null if it wasn't sampled
+     */
+    static Record sample(MeshFuture<?> future) {
+        if (!enabled) {
+            return null;
+        }
+
+        int rate = sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return null;
+        }
+
+        Record record = new Record(future);
+        records.add(record);
+
+        return record;
+    }
+
+    private static void startSweep() {
+        try {
+            SchedulerUtil.getScheduler().runAsync(MeshLeakDetector::sweep, 0L); // off the timer thread
+        } catch (Throwable throwable) {
+            synchronized (MeshLeakDetector.class) {
+                sweeping = false;
+            }
+
+            PluginUtil.logException("Mesh-Leak - Could not start a sweep, the leak detector stopped", throwable);
+        }
+    }
+
+    private static void sweep() {
+        try {
+            for (Reference<? extends MeshFuture<?>> next; (next = queue.poll()) != null; ) {
+                Record record = (Record) next;
+
+                if (records.remove(record)) {
+                    report(new Leak(Leak.Kind.UNREACHABLE, record));
+                }
+            }
+
+            long now = System.nanoTime();
+
+            for (Record record : records) {
+                MeshFuture<?> future = record.get();
+
+                if (future == null || record.reported || now - record.createdAt < thresholdNanos) {
+                    continue;
+                }
+
+                record.snapshot(future);
+                record.reported = true; // report stalled Meshes once, they are still reported if they become unreachable
+                report(new Leak(Leak.Kind.STALLED, record));
+            }
+
+            for (Record record : records) { // keep the dependent counts fresh, for Meshes which later become unreachable
+                MeshFuture<?> future = record.get();
+
+                if (future != null) {
+                    record.snapshot(future);
+                }
+            }
+        } finally {
+            synchronized (MeshLeakDetector.class) {
+                if (enabled) {
+                    SchedulerUtil.getScheduler().schedule(MeshLeakDetector::startSweep, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    sweeping = false;
+                }
+            }
+        }
+    }
+
+    private static void report(Leak leak) {
+        try {
+            reporter.accept(leak);
+        } catch (Throwable throwable) {
+            PluginUtil.logException("Mesh-Leak - The leak reporter threw an exception", throwable); // don't let a broken reporter stop the sweeps
+        }
+    }
+
+    private static void log(Leak leak) {
+        PluginUtil.logException("Mesh-Leak - " + leak, leak.getCreationSite());
+    }
+
+
+    /**
+     * A leak reported by the detector.
+     */
+    public static final class Leak {
+
+        public enum Kind {
+            /**
+             * The Mesh became unreachable without ever completing, so its dependents never ran. Never reported for
+             * Meshes which belong to a {@link MeshScope}, since the scope keeps them reachable.
+             */
+            UNREACHABLE,
+            /**
+             * The Mesh is still reachable, but has been incomplete for longer than the threshold.
+             */
+            STALLED
+        }
+
+        private final Kind kind;
+        private final long ageMillis;
+        private final int dependents;
+        private final boolean supplied;
+        private final Throwable creationSite;
+
+        private Leak(Kind kind, Record record) {
+            this.kind = kind;
+            this.ageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - record.createdAt);
+            this.dependents = record.dependents;
+            this.supplied = record.supplied;
+            this.creationSite = record.creationSite;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return how long ago the Mesh was created (for unreachable Meshes, this is when the leak was found rather than when the Mesh became unreachable)
+         */
+        public long getAgeMillis() {
+            return ageMillis;
+        }
+
+        /**
+         * @return how many stages depended on the Mesh, when it was last seen
+         */
+        public int getDependents() {
+            return dependents;
+        }
+
+        /**
+         * @return if the Mesh had been supplied, when it was last seen
+         */
+        public boolean wasSupplied() {
+            return supplied;
+        }
+
+        /**
+         * @return a throwable whose stack trace shows where the Mesh was created
+         */
+        public Throwable getCreationSite() {
+            return creationSite;
+        }
+
+        @Override
+        public String toString() {
+            return (kind == Kind.UNREACHABLE ? "Mesh became unreachable without completing" : "Mesh has not completed")
+                    + " (age " + ageMillis + "ms, " + dependents + " dependent(s), " + (supplied ? "supplied" : "never supplied") + ")";
+        }
+    }
+
+    /**
+     * Tracks a sampled Mesh through its backing future, which becomes unreachable together with the Mesh.
+     */
+    static final class Record extends WeakReference<MeshFuture<?>> {
+
+        private final long createdAt = System.nanoTime();
+        private final Throwable creationSite = new Throwable("Mesh created here");
+        private volatile int dependents = 0;
+        private volatile boolean supplied = false;
+        private volatile boolean reported = false;
+
+        private Record(MeshFuture<?> future) {
+            super(future, queue);
+        }
+
+        private void snapshot(MeshFuture<?> future) {
+            dependents = future.getNumberOfDependents();
+            supplied = future.owner != null && future.owner.hasBeenSupplied();
+        }
+
+        /**
+         * Called when the tracked Mesh completes.
+         */
+        void completed() {
+            records.remove(this);
+            clear();
+        }
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+import static us.figt.mesh.utils.ThreadContext.ASYNC;
+import static us.figt.mesh.utils.ThreadContext.SYNC;
+
+/**
+ * A chain of Mesh stages which is built once, and can then be run many times.
+ * <p>
+ * The stages are stored in an immutable array shared by every run; running the pipeline only creates the resulting
+ * Mesh and a single object tracking the run's progress, which is also the task handed to the scheduler. Consecutive
+ * stages with the same thread context (and no delay) run within a single dispatch.
+ * <pre>{@code
+ * MeshPipeline<Player, Void> showStats = MeshPipeline.<Player>builder()
+ *         .applyAsync(player -> loadStats(player.getUniqueId()))
+ *         .acceptSync(stats -> stats.show())
+ *         .build();
+ *
+ * showStats.run(player);
+ * }</pre>
+ *
+ * @param <I> the input type of this pipeline
+ * @param <O> the output type of this pipeline
+ * @author FigT
+ */
+@SuppressWarnings("unused")
+public final class MeshPipeline<I, O> {
+
+    private final Step[] steps;
+
+    private MeshPipeline(List<Step> steps) {
+        this.steps = steps.toArray(new Step[0]);
+    }
+
+    /**
+     * Starts building a pipeline.
+     *
+     * @param <I> the input type of the pipeline
+     * @return the builder
+     */
+    public static <I> Builder<I, I> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Runs this pipeline with the given input.
+     *
+     * @param input the input
+     * @return the Mesh which completes with the output of this run
+     */
+    public Mesh<O> run(I input) {
+        Mesh<O> result = Mesh.createMesh();
+        new Run<>(steps, result, input).start();
+
+        return result;
+    }
+
+    /**
+     * @return the amount of stages in this pipeline
+     */
+    public int size() {
+        return steps.length;
+    }
+
+
+    public static final class Builder<I, T> {
+
+        private final List<Step> steps = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Applies a function <strong>asynchronously</strong>.
+         *
+         * @param function the function to apply
+         * @param <R>      the type of the function's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> applyAsync(Function<? super T, ? extends R> function) {
+            return add(Step.APPLY, function, ASYNC, NO_DElAY);
+        }
+
+        /**
+         * Applies a function <strong>asynchronously</strong>.
+         *
+         * @param function the function to apply
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+         * @param <R>      the type of the function's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> applyAsyncDelayed(Function<? super T, ? extends R> function, long delay) {
+            return add(Step.APPLY, function, ASYNC, delay);
+        }
+
+        /**
+         * Applies a function <strong>synchronously</strong>.
+         *
+         * @param function the function to apply
+         * @param <R>      the type of the function's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> applySync(Function<? super T, ? extends R> function) {
+            return add(Step.APPLY, function, SYNC, NO_DElAY);
+        }
+
+        /**
+         * Applies a function <strong>synchronously</strong>.
+         *
+         * @param function the function to apply
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to apply the function
+         * @param <R>      the type of the function's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> applySyncDelayed(Function<? super T, ? extends R> function, long delay) {
+            return add(Step.APPLY, function, SYNC, delay);
+        }
+
+        /**
+         * Executes an action <strong>asynchronously</strong> with Void return type.
+         *
+         * @param consumer the action to run
+         * @return this builder
+         */
+        public Builder<I, Void> acceptAsync(Consumer<? super T> consumer) {
+            return add(Step.ACCEPT, consumer, ASYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes an action <strong>asynchronously</strong> with Void return type.
+         *
+         * @param consumer the action to run
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+         * @return this builder
+         */
+        public Builder<I, Void> acceptAsyncDelayed(Consumer<? super T> consumer, long delay) {
+            return add(Step.ACCEPT, consumer, ASYNC, delay);
+        }
+
+        /**
+         * Executes an action <strong>synchronously</strong> with Void return type.
+         *
+         * @param consumer the action to run
+         * @return this builder
+         */
+        public Builder<I, Void> acceptSync(Consumer<? super T> consumer) {
+            return add(Step.ACCEPT, consumer, SYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes an action <strong>synchronously</strong> with Void return type.
+         *
+         * @param consumer the action to run
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to run the action
+         * @return this builder
+         */
+        public Builder<I, Void> acceptSyncDelayed(Consumer<? super T> consumer, long delay) {
+            return add(Step.ACCEPT, consumer, SYNC, delay);
+        }
+
+        /**
+         * Executes a runnable <strong>asynchronously</strong>.
+         *
+         * @param runnable the runnable to run
+         * @return this builder
+         */
+        public Builder<I, Void> runAsync(Runnable runnable) {
+            return add(Step.RUN, runnable, ASYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes a runnable <strong>asynchronously</strong>.
+         *
+         * @param runnable the runnable to run
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the runnable
+         * @return this builder
+         */
+        public Builder<I, Void> runAsyncDelayed(Runnable runnable, long delay) {
+            return add(Step.RUN, runnable, ASYNC, delay);
+        }
+
+        /**
+         * Executes a runnable <strong>synchronously</strong>.
+         *
+         * @param runnable the runnable to run
+         * @return this builder
+         */
+        public Builder<I, Void> runSync(Runnable runnable) {
+            return add(Step.RUN, runnable, SYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes a runnable <strong>synchronously</strong>.
+         *
+         * @param runnable the runnable to run
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the runnable
+         * @return this builder
+         */
+        public Builder<I, Void> runSyncDelayed(Runnable runnable, long delay) {
+            return add(Step.RUN, runnable, SYNC, delay);
+        }
+
+        /**
+         * Executes an operation <strong>asynchronously</strong> if an exception occurred in a previous stage.
+         *
+         * @param function the function to execute
+         * @return this builder
+         */
+        public Builder<I, T> exceptionallyAsync(Function<Throwable, ? extends T> function) {
+            return add(Step.EXCEPTIONALLY, function, ASYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes an operation <strong>asynchronously</strong> if an exception occurred in a previous stage.
+         *
+         * @param function the function to execute
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the function
+         * @return this builder
+         */
+        public Builder<I, T> exceptionallyAsyncDelayed(Function<Throwable, ? extends T> function, long delay) {
+            return add(Step.EXCEPTIONALLY, function, ASYNC, delay);
+        }
+
+        /**
+         * Executes an operation <strong>synchronously</strong> if an exception occurred in a previous stage.
+         *
+         * @param function the function to execute
+         * @return this builder
+         */
+        public Builder<I, T> exceptionallySync(Function<Throwable, ? extends T> function) {
+            return add(Step.EXCEPTIONALLY, function, SYNC, NO_DElAY);
+        }
+
+        /**
+         * Executes an operation <strong>synchronously</strong> if an exception occurred in a previous stage.
+         *
+         * @param function the function to execute
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the function
+         * @return this builder
+         */
+        public Builder<I, T> exceptionallySyncDelayed(Function<Throwable, ? extends T> function, long delay) {
+            return add(Step.EXCEPTIONALLY, function, SYNC, delay);
+        }
+
+        /**
+         * Runs a function returning a Mesh <strong>asynchronously</strong>, and continues with that Mesh's result.
+         *
+         * @param function the function to execute
+         * @param <R>      the type of the returned Mesh's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> composeAsync(Function<? super T, ? extends Mesh<R>> function) {
+            return add(Step.COMPOSE, function, ASYNC, NO_DElAY);
+        }
+
+        /**
+         * Runs a function returning a Mesh <strong>asynchronously</strong>, and continues with that Mesh's result.
+         *
+         * @param function the function to execute
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the function
+         * @param <R>      the type of the returned Mesh's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> composeAsyncDelayed(Function<? super T, ? extends Mesh<R>> function, long delay) {
+            return add(Step.COMPOSE, function, ASYNC, delay);
+        }
+
+        /**
+         * Runs a function returning a Mesh <strong>synchronously</strong>, and continues with that Mesh's result.
+         *
+         * @param function the function to execute
+         * @param <R>      the type of the returned Mesh's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> composeSync(Function<? super T, ? extends Mesh<R>> function) {
+            return add(Step.COMPOSE, function, SYNC, NO_DElAY);
+        }
+
+        /**
+         * Runs a function returning a Mesh <strong>synchronously</strong>, and continues with that Mesh's result.
+         *
+         * @param function the function to execute
+         * @param delay    the delay (<strong>in ticks</strong>) to wait to execute the function
+         * @param <R>      the type of the returned Mesh's result
+         * @return this builder
+         */
+        public <R> Builder<I, R> composeSyncDelayed(Function<? super T, ? extends Mesh<R>> function, long delay) {
+            return add(Step.COMPOSE, function, SYNC, delay);
+        }
+
+        /**
+         * Builds the pipeline, the builder can keep being used afterwards without affecting it.
+         *
+         * @return the pipeline
+         */
+        public MeshPipeline<I, T> build() {
+            return new MeshPipeline<>(steps);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <R> Builder<I, R> add(int kind, Object action, ThreadContext threadContext, long delay) {
+            if (action == null) {
+                throw new NullPointerException("Stage action cannot be null");
+            }
+
+            steps.add(new Step(kind, action, threadContext, delay));
+            return (Builder<I, R>) this;
+        }
+    }
+
+    private static final class Step {
+
+        private static final int APPLY = 0;
+        private static final int ACCEPT = 1;
+        private static final int RUN = 2;
+        private static final int EXCEPTIONALLY = 3;
+        private static final int COMPOSE = 4;
+
+        private final int kind;
+        private final Object action;
+        private final ThreadContext threadContext;
+        private final long delay;
+
+        private Step(int kind, Object action, ThreadContext threadContext, long delay) {
+            this.kind = kind;
+            this.action = action;
+            this.threadContext = threadContext;
+            this.delay = delay;
+        }
+
+        private boolean handlesFailure() {
+            return kind == EXCEPTIONALLY;
+        }
+    }
+
+    /**
+     * The progress of a single run, which is also the task dispatched whenever it has to switch thread context.
+     */
+    @SuppressWarnings("unchecked")
+    private static final class Run<O> implements Runnable {
+
+        private final Step[] steps;
+        private final Mesh<O> result;
+
+        private int index = 0;
+        private Object value;
+        private Throwable throwable = null;
+
+        private Run(Step[] steps, Mesh<O> result, Object input) {
+            this.steps = steps;
+            this.result = result;
+            this.value = input;
+        }
+
+        private void start() {
+            skipInapplicable();
+
+            if (index < steps.length && steps[index].threadContext == SYNC && steps[index].delay <= NO_DElAY) {
+                MeshRunnables.run(this, SYNC, NO_DElAY); // inline if already on the main thread, like Mesh#applySync
+            } else {
+                dispatch();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isCancelled()) {
+                return;
+            }
+
+            MeshScope.Frame previous = MeshScope.enter(result.getScope()); // Meshes created by the steps belong to the run's scope
+
+            try {
+                runSteps();
+            } finally {
+                MeshScope.exit(previous);
+            }
+        }
+
+        private void runSteps() {
+            ThreadContext current = ThreadContext.getThreadContext(Thread.currentThread());
+            boolean dispatched = true; // the first stage was dispatched to its context, so it runs here regardless
+
+            while (index < steps.length) {
+                Step step = steps[index];
+
+                if (!dispatched && (step.threadContext != current || step.delay > NO_DElAY)) {
+                    dispatch();
+                    return;
+                }
+
+                dispatched = false;
+                index++;
+
+                if (step.kind == Step.COMPOSE) {
+                    compose(step);
+                    return;
+                }
+
+                runStep(step);
+                skipInapplicable();
+            }
+
+            finish();
+        }
+
+        private void runStep(Step step) {
+            try {
+                switch (step.kind) {
+                    case Step.APPLY:
+                        value = ((Function<Object, Object>) step.action).apply(value);
+                        break;
+                    case Step.ACCEPT:
+                        ((Consumer<Object>) step.action).accept(value);
+                        value = null;
+                        break;
+                    case Step.RUN:
+                        ((Runnable) step.action).run();
+                        value = null;
+                        break;
+                    case Step.EXCEPTIONALLY:
+                        value = ((Function<Throwable, Object>) step.action).apply(throwable);
+                        throwable = null;
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected value: " + step.kind);
+                }
+            } catch (Throwable t) {
+                value = null;
+                throwable = t;
+            }
+        }
+
+        private void compose(Step step) {
+            Mesh<Object> composed;
+
+            try {
+                composed = ((Function<Object, Mesh<Object>>) step.action).apply(value);
+            } catch (Throwable t) {
+                throwable = t;
+                resume();
+                return;
+            }
+
+            if (composed == null) {
+                value = null;
+                resume();
+                return;
+            }
+
+            composed.getCompletableFuture().whenComplete((composedValue, composedThrowable) -> {
+                value = composedValue;
+                throwable = composedThrowable;
+                resume();
+            });
+        }
+
+        private void resume() {
+            skipInapplicable();
+
+            if (index < steps.length) {
+                dispatch();
+            } else {
+                finish();
+            }
+        }
+
+        /**
+         * Skips the stages which don't apply: the normal stages if there is a failure, and the failure handlers if there is none.
+         */
+        private void skipInapplicable() {
+            while (index < steps.length && steps[index].handlesFailure() != (throwable != null)) {
+                index++;
+            }
+        }
+
+        private void dispatch() {
+            if (index >= steps.length) {
+                finish();
+                return;
+            }
+
+            Step step = steps[index];
+            MeshTask task = MeshRunnables.run(this, step.threadContext, step.delay);
+
+            if (task != MeshTask.NONE) {
+                result.setPendingTask(task); // so cancelling the result drops the scheduled step
+            }
+        }
+
+        private void finish() {
+            if (throwable == null) {
+                result.complete((O) value);
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Completes a Mesh with the first successful result of its contestants, which may join the race late (e.g. a hedged
+ * attempt), and cancels the rest once it is decided.
+ * <p>
+ * The Mesh only fails when every contestant failed and no more will join, with the last failure.
+ *
+ * @author FigT
+ */
+final class MeshRace<T> {
+
+    private final Mesh<T> mesh;
+    private final List<Mesh<? extends T>> contestants = new ArrayList<>(); // guarded by this
+    private int pending = 0; // guarded by this
+    private boolean closed = false; // guarded by this, set once no more contestants will join
+    private Throwable failure = null; // guarded by this
+
+    MeshRace(Mesh<T> mesh) {
+        this.mesh = mesh;
+
+        // however the race ends (won, lost, or the Mesh cancelled), the remaining contestants are cancelled
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> cancelContestants());
+    }
+
+    /**
+     * Adds a contestant to the race, if it hasn't been decided yet, otherwise it is cancelled.
+     *
+     * @param contestant the contestant
+     */
+    void add(Mesh<? extends T> contestant) {
+        boolean decided;
+
+        synchronized (this) {
+            decided = mesh.getCompletableFuture().isDone(); // if not, cancelContestants will see the contestant
+
+            if (!decided) {
+                contestants.add(contestant);
+                pending++;
+            }
+        }
+
+        if (decided) {
+            contestant.cancel();
+            return;
+        }
+
+        contestant.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                mesh.complete(value);
+            } else {
+                failed(throwable);
+            }
+        });
+    }
+
+    /**
+     * Marks that no more contestants will join, so the race is lost once the current ones have all failed.
+     */
+    void close() {
+        Throwable lost;
+
+        synchronized (this) {
+            closed = true;
+            lost = pending == 0 ? failure : null;
+        }
+
+        if (lost != null) {
+            mesh.completeExceptionally(lost);
+        }
+    }
+
+    private void failed(Throwable throwable) {
+        boolean lost;
+
+        synchronized (this) {
+            pending--;
+            failure = throwable;
+            lost = closed && pending == 0;
+        }
+
+        if (lost) {
+            mesh.completeExceptionally(throwable);
+        }
+    }
+
+    private void cancelContestants() {
+        List<Mesh<? extends T>> copy;
+
+        synchronized (this) {
+            closed = true;
+            copy = new ArrayList<>(contestants);
+            contestants.clear();
+        }
+
+        for (Mesh<? extends T> contestant : copy) {
+            contestant.cancel(); // does nothing to the winner, which has already completed
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.utils.SchedulerUtil;
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+
+/**
+ * Makes the attempts of {@link Mesh#retry(Supplier, RetryPolicy)}, backing off between them on the shared timer, which
+ * hands each retry over to be made <strong>asynchronously</strong> (so a slow attempt can't stall the timer).
+ * Cancelling the retrying Mesh cancels the current attempt, or the scheduled one.
+ *
+ * @author FigT
+ */
+final class MeshRetry<T> implements BiConsumer<T, Throwable>, Runnable {
+
+    private final Mesh<T> mesh;
+    private final Supplier<? extends Mesh<T>> attempt;
+    private final RetryPolicy policy;
+    private int attempts = 0; // only touched by the current attempt, which happens-after the previous one
+    private volatile Mesh<T> current = null;
+    private volatile MeshTask backoff = MeshTask.NONE;
+
+    MeshRetry(Mesh<T> mesh, Supplier<? extends Mesh<T>> attempt, RetryPolicy policy) {
+        this.mesh = mesh;
+        this.attempt = attempt;
+        this.policy = policy;
+
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable != null) { // e.g. cancelled, stop retrying
+                backoff.cancel();
+
+                Mesh<T> current = this.current;
+                if (current != null) {
+                    current.cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * Makes the next attempt.
+     */
+    @Override
+    public void run() {
+        if (mesh.getCompletableFuture().isDone()) {
+            return;
+        }
+
+        attempts++;
+
+        Mesh<T> next;
+        CompletableFuture<T> future;
+        try {
+            CircuitBreaker circuitBreaker = policy.getCircuitBreaker();
+            next = mesh.inScope(() -> circuitBreaker == null ? attempt.get() : circuitBreaker.protect(attempt)); // the attempts don't count as chains
+            future = Objects.requireNonNull(next, "Retry attempt returned a null Mesh").getCompletableFuture();
+        } catch (Throwable throwable) {
+            accept(null, throwable);
+            return;
+        }
+
+        current = next;
+        future.whenComplete(this);
+    }
+
+    /**
+     * Called when an attempt completes.
+     */
+    @Override
+    public void accept(T value, Throwable throwable) {
+        if (throwable == null) {
+            mesh.complete(value);
+        } else if (attempts < policy.getMaxAttempts() && policy.shouldRetry(throwable)) {
+            backoff = SchedulerUtil.getScheduler().schedule(this::handOff, policy.delayNanos(attempts), TimeUnit.NANOSECONDS);
+
+            if (mesh.getCompletableFuture().isDone()) {
+                backoff.cancel(); // cancelled while we were scheduling
+            }
+        } else {
+            mesh.completeExceptionally(throwable);
+        }
+    }
+
+    private void handOff() {
+        backoff = MeshRunnables.run(this, ThreadContext.ASYNC, NO_DElAY);
+
+        if (mesh.getCompletableFuture().isDone()) {
+            backoff.cancel(); // cancelled while we were handing off
+        }
+    }
+}
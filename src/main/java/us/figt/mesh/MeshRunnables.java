@@ -24,12 +24,23 @@
 
 package us.figt.mesh;
 
+import us.figt.mesh.scheduler.MeshTask;
 import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
 import us.figt.mesh.utils.ThreadContext;
 
+import java.util.ArrayDeque;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
@@ -43,43 +54,199 @@ final class MeshRunnables {
         throw new AssertionError("Container class cannot be instantiated"); // seal
     }
 
-    static void run(Runnable runnable, ThreadContext context, long delay) {
+    private static final AtomicInteger asyncInFlight = new AtomicInteger(); // async tasks which have been dispatched but not finished
+    private static final AtomicInteger delayedSyncPending = new AtomicInteger(); // delayed sync tasks which are waiting in the scheduler
+
+    // SYNC runnables which were run inline while another one was already running inline, only touched by the main thread
+    private static final ArrayDeque<Runnable> trampoline = new ArrayDeque<>();
+    private static boolean trampolining = false;
+
+    static MeshTask run(Runnable runnable, ThreadContext context, long delay) {
+        MeshTask task = dispatch(runnable, context, delay);
+
+        if (task != MeshTask.NONE && runnable instanceof AbstractWrappedRunnable<?>) {
+            ((AbstractWrappedRunnable<?>) runnable).mesh.setPendingTask(task); // so cancelling the Mesh cancels the task
+        }
+
+        return task;
+    }
+
+    private static MeshTask dispatch(Runnable runnable, ThreadContext context, long delay) {
         // no delay check
         if (delay > NO_DElAY) {
-            runLater(runnable, context, delay);
-            return;
+            return runLater(runnable, context, delay);
         }
 
         switch (context) {
             case SYNC:
                 if (ThreadContext.getThreadContext(Thread.currentThread()) == ThreadContext.SYNC) {
-                    runnable.run(); // if current thread is main thread, just run the runnable
+                    runInline(runnable); // if current thread is main thread, just run the runnable
                 } else {
-                    PluginUtil.getPlugin().getServer().getScheduler().runTask(PluginUtil.getPlugin(), runnable); // else run the task sync via BukkitScheduler
+                    SyncQueue.submit(runnable); // else queue it for the main thread
                 }
-                break;
+                return MeshTask.NONE;
 
             case ASYNC:
-                PluginUtil.getPlugin().getServer().getScheduler().runTaskAsynchronously(PluginUtil.getPlugin(), runnable);
-                break;
+                CountedRunnable counted = new CountedRunnable(runnable, asyncInFlight, null);
+                return counted.schedule(SchedulerUtil.getScheduler().runAsync(counted, NO_DElAY));
             default:
                 throw new IllegalStateException("Unexpected value: " + context);
         }
     }
 
-    private static void runLater(Runnable runnable, ThreadContext context, long delay) {
+    private static MeshTask runLater(Runnable runnable, ThreadContext context, long delay) {
+        CountedRunnable counted;
+
         switch (context) {
             case SYNC:
-                PluginUtil.getPlugin().getServer().getScheduler().runTaskLater(PluginUtil.getPlugin(), runnable, delay); // has delay
-                break;
+                Mesh<?> target = runnable instanceof AbstractWrappedRunnable<?> ? ((AbstractWrappedRunnable<?>) runnable).mesh : null;
+                counted = new CountedRunnable(runnable, delayedSyncPending, target);
+                return counted.schedule(SchedulerUtil.getScheduler().runSync(counted, delay)); // has delay
             case ASYNC:
-                PluginUtil.getPlugin().getServer().getScheduler().runTaskLaterAsynchronously(PluginUtil.getPlugin(), runnable, delay);
-                break;
+                counted = new CountedRunnable(runnable, asyncInFlight, null);
+                return counted.schedule(SchedulerUtil.getScheduler().runAsync(counted, delay));
             default:
                 throw new IllegalStateException("Unexpected value: " + context);
         }
     }
 
+    /**
+     * Runs a runnable on the (current) main thread, without growing the stack when runnables complete Meshes whose
+     * dependents run inline again: those are queued and run iteratively once the outermost runnable returns.
+     * <p>
+     * A SYNC Mesh created by an inline runnable is queued as well, so blocking on it there (e.g. with {@code join()} or
+     * {@code get()}) would wait for work which only runs after the runnable returns. The backing {@link MeshFuture}
+     * avoids that by running the queued runnables itself, see {@link #runTrampolinedUntil(CompletableFuture)}.
+     *
+     * @param runnable the runnable to run
+     */
+    private static void runInline(Runnable runnable) {
+        if (trampolining) {
+            trampoline.add(runnable); // the outermost call will get to it
+            return;
+        }
+
+        trampolining = true;
+
+        try {
+            runnable.run();
+        } finally {
+            try {
+                runTrampolined();
+            } finally {
+                trampolining = false;
+            }
+        }
+    }
+
+    /**
+     * Runs the runnables queued on the trampoline, this must be called on the main thread.
+     *
+     * @return the amount of runnables which were run
+     */
+    static int runTrampolined() {
+        int ran = 0;
+
+        for (Runnable next; (next = trampoline.poll()) != null; ran++) {
+            try {
+                next.run();
+            } catch (Throwable throwable) {
+                PluginUtil.logException("Mesh sync task generated an exception", throwable);
+            }
+        }
+
+        return ran;
+    }
+
+    /**
+     * Runs the runnables queued on the trampoline until the given future is done, for a main thread which is about to
+     * block on the future from within an inline runnable. Does nothing on other threads, or outside of inline runnables.
+     *
+     * @param future the future to wait for
+     */
+    static void runTrampolinedUntil(CompletableFuture<?> future) {
+        if (ThreadContext.getThreadContext(Thread.currentThread()) != ThreadContext.SYNC || !trampolining) {
+            return;
+        }
+
+        for (Runnable next; !future.isDone() && (next = trampoline.poll()) != null; ) {
+            try {
+                next.run();
+            } catch (Throwable throwable) {
+                PluginUtil.logException("Mesh sync task generated an exception", throwable);
+            }
+        }
+    }
+
+    /**
+     * @return the amount of async tasks which have been dispatched but not finished
+     */
+    static int getAsyncInFlight() {
+        return asyncInFlight.get();
+    }
+
+    /**
+     * @return the amount of delayed sync tasks which are waiting in the scheduler
+     */
+    static int getDelayedSyncPending() {
+        return delayedSyncPending.get();
+    }
+
+    /**
+     * A scheduled runnable which is counted while it's pending, and doubles as the handle to cancel it.
+     */
+    private static final class CountedRunnable extends AtomicBoolean implements Runnable, MeshTask { // true once it ran or was cancelled
+
+        private final Runnable runnable;
+        private final AtomicInteger counter;
+        private final Mesh<?> delayedSyncTarget; // the Mesh a delayed sync runnable completes, if known, see Mesh#joinSync
+        private volatile MeshTask task = null;
+
+        private CountedRunnable(Runnable runnable, AtomicInteger counter, Mesh<?> delayedSyncTarget) {
+            this.runnable = runnable;
+            this.counter = counter;
+            this.delayedSyncTarget = delayedSyncTarget;
+
+            counter.incrementAndGet();
+            if (delayedSyncTarget != null) delayedSyncTarget.delayedSyncScheduled();
+        }
+
+        private MeshTask schedule(MeshTask task) {
+            this.task = task;
+            return this;
+        }
+
+        @Override
+        public void run() {
+            if (get()) {
+                return; // cancelled
+            }
+
+            try {
+                runnable.run();
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            MeshTask scheduled = task;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+
+            finish();
+        }
+
+        private void finish() {
+            if (compareAndSet(false, true)) {
+                counter.decrementAndGet();
+                if (delayedSyncTarget != null) delayedSyncTarget.delayedSyncFinished();
+            }
+        }
+    }
+
     public static abstract class AbstractWrappedRunnable<T> implements Runnable {
 
         final Mesh<? super T> mesh;
@@ -101,11 +268,15 @@ final class MeshRunnables {
         @Override
         public void run() {
             if (!mesh.isCancelled()) {
+                MeshScope.Frame previous = MeshScope.enter(mesh.getScope()); // Meshes created by the stage belong to its scope
+
                 try {
                     onComplete();
                     if (shouldNormalComplete()) mesh.complete(getCompleteValue());
                 } catch (Throwable throwable) {
                     mesh.completeExceptionally(throwable);
+                } finally {
+                    MeshScope.exit(previous);
                 }
             }
         }
@@ -231,10 +402,104 @@ final class MeshRunnables {
             Mesh<R> applied = function.apply(value);
 
             if (applied != null) {
-                applied.accept(mesh::complete, threadContext, NO_DElAY);
+                // complete from the inner Mesh (failures included), in the compose stage's thread context
+                applied.getCompletableFuture().whenComplete((composedValue, throwable) -> MeshRunnables.run(() -> {
+                    if (throwable == null) {
+                        mesh.complete(composedValue);
+                    } else {
+                        mesh.completeExceptionally(throwable);
+                    }
+                }, threadContext, NO_DElAY));
             }
 
             return applied == null;
         }
     }
+
+    /**
+     * Drives {@link Mesh#loop} and {@link Mesh#repeatUntil}: iterations which complete right away are looped over
+     * iteratively, and only the current iteration's Mesh is referenced, so neither the stack nor memory grow with the
+     * amount of iterations. Cancelling the loop's Mesh cancels the current iteration.
+     */
+    static final class LoopRunnable<T> implements Runnable, BiConsumer<T, Throwable> {
+
+        private final Mesh<T> mesh;
+        private final Predicate<? super T> condition;
+        private final Function<? super T, ? extends Mesh<T>> body;
+        private boolean checkFirst; // false for do-while style loops, until the first iteration ran
+        private T value;
+        private volatile Mesh<T> current = null; // the iteration in flight
+
+        LoopRunnable(Mesh<T> mesh, T seed, Predicate<? super T> condition, Function<? super T, ? extends Mesh<T>> body, boolean checkFirst) {
+            this.mesh = mesh;
+            this.value = seed;
+            this.condition = condition;
+            this.body = body;
+            this.checkFirst = checkFirst;
+
+            mesh.getCompletableFuture().whenComplete((loopValue, throwable) -> {
+                Mesh<T> iteration = current;
+                if (iteration != null && mesh.isCancelled()) {
+                    iteration.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (!mesh.isCancelled()) {
+                Mesh<T> next;
+                MeshScope.Frame previous = MeshScope.enter(mesh.getScope()); // the iterations belong to the loop's scope
+
+                try {
+                    if (checkFirst && !condition.test(value)) {
+                        mesh.complete(value);
+                        return;
+                    }
+
+                    checkFirst = true;
+                    next = Objects.requireNonNull(body.apply(value), "Loop body returned a null Mesh");
+                } catch (Throwable throwable) {
+                    mesh.completeExceptionally(throwable);
+                    return;
+                } finally {
+                    MeshScope.exit(previous);
+                }
+
+                current = next;
+                if (mesh.isCancelled()) {
+                    next.cancel(); // cancelled while the body ran
+                    return;
+                }
+
+                CompletableFuture<T> future = next.getCompletableFuture();
+
+                if (!future.isDone()) {
+                    future.whenComplete(this); // continues in accept, once this iteration is done
+                    return;
+                }
+
+                try {
+                    value = future.join(); // done already, keep looping here instead of recursing
+                } catch (CompletionException e) {
+                    mesh.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+                    return;
+                } catch (CancellationException e) {
+                    mesh.completeExceptionally(e);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void accept(T iterationValue, Throwable throwable) {
+            if (throwable != null) {
+                mesh.completeExceptionally(throwable);
+                return;
+            }
+
+            value = iterationValue;
+            run();
+        }
+    }
 }
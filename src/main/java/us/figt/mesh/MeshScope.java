@@ -0,0 +1,358 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import us.figt.mesh.utils.PluginUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Owns the Meshes created within it, so a group of chains (e.g. everything tied to a player's session, or to a minigame
+ * arena) can be cancelled at once.
+ * <p>
+ * Meshes created (through the static Mesh factories) inside {@link #run(Runnable)} or {@link #call(Supplier)} belong to
+ * the scope, as do all stages which are later added to them, regardless of the thread they are added on. The scope is
+ * also carried over to the work of its Meshes (stage bodies, compose functions, loop bodies and retry attempts), so the
+ * Meshes created there belong to it as well, whichever thread that work runs on. Closing the scope cancels each of its
+ * pending Meshes along with their scheduled tasks, so the lambdas (and whatever they captured) are no longer referenced;
+ * Meshes created in a closed scope are cancelled right away.
+ * <p>
+ * A scope can limit how many chains (Meshes created directly in {@link #call(Supplier)} or {@link #run(Runnable)}, not
+ * their stages nor the Meshes created by their work) are in flight at once, a chain started past the limit is completed
+ * with a {@link RejectedExecutionException} instead of being run.
+ * <p>
+ * Every scope is a child of the {@link #root() root scope}, which is closed when the plugin is disabled.
+ *
+ * @author FigT
+ */
+public final class MeshScope implements AutoCloseable {
+
+    private static final ThreadLocal<Frame> CURRENT = new ThreadLocal<>();
+    private static volatile MeshScope root = null;
+
+    private final MeshScope parent;
+    private final int maxInFlight;
+    private final Set<Mesh<?>> tracked = ConcurrentHashMap.newKeySet();
+    private final Set<MeshScope> children = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger chainsInFlight = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final Frame chainFrame = new Frame(this, true); // current while in call
+    private final Frame stageFrame = new Frame(this, false); // current while running the work of one of its Meshes
+
+    private MeshScope(MeshScope parent, int maxInFlight) {
+        this.parent = parent;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets the root scope, which is closed (closing every other scope) when the plugin is disabled.
+     *
+     * @return the root scope
+     */
+    public static MeshScope root() {
+        MeshScope scope = root;
+
+        if (scope == null) {
+            synchronized (MeshScope.class) {
+                if ((scope = root) == null) {
+                    root = scope = new MeshScope(null, 0);
+
+                    if (Bukkit.getServer() != null) { // not when running without a server, e.g. on the VirtualTickScheduler
+                        PluginUtil.getPlugin().getServer().getPluginManager().registerEvents(new DisableListener(scope), PluginUtil.getPlugin());
+                    }
+                }
+            }
+        }
+
+        return scope;
+    }
+
+    /**
+     * Creates a new scope, as a child of the root scope.
+     *
+     * @return the new scope
+     */
+    public static MeshScope create() {
+        return root().child();
+    }
+
+    /**
+     * Creates a new scope, as a child of the root scope, which allows at most the given amount of chains in flight.
+     *
+     * @param maxInFlight the maximum amount of chains in flight, or 0 for no limit
+     * @return the new scope
+     */
+    public static MeshScope create(int maxInFlight) {
+        return root().child(maxInFlight);
+    }
+
+    /**
+     * Gets the scope the calling thread is running in.
+     *
+     * @return the current scope, or null if there is none
+     */
+    public static MeshScope current() {
+        Frame frame = CURRENT.get();
+        return frame == null ? null : frame.scope;
+    }
+
+    /**
+     * @return the scope the calling thread is running in, along with how Meshes created in it are tracked, or null
+     */
+    static Frame currentFrame() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the given scope current while running the work of one of its Meshes (on whichever thread), so the Meshes
+     * created by that work belong to it, without counting as chains of their own.
+     *
+     * @param scope the scope of the Mesh whose work is about to run, or null
+     * @return the previous frame, to be given to {@link #exit(Frame)} once the work is done
+     */
+    static Frame enter(MeshScope scope) {
+        Frame previous = CURRENT.get();
+        setCurrent(scope == null ? null : scope.stageFrame);
+
+        return previous;
+    }
+
+    /**
+     * Restores the frame which was current before {@link #enter(MeshScope)}.
+     *
+     * @param previous the previous frame
+     */
+    static void exit(Frame previous) {
+        setCurrent(previous);
+    }
+
+    private static void setCurrent(Frame frame) {
+        if (frame == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(frame);
+        }
+    }
+
+    /**
+     * Creates a new scope which is closed along with this one.
+     *
+     * @return the new scope
+     */
+    public MeshScope child() {
+        return child(0);
+    }
+
+    /**
+     * Creates a new scope which is closed along with this one, and allows at most the given amount of chains in flight.
+     *
+     * @param maxInFlight the maximum amount of chains in flight, or 0 for no limit
+     * @return the new scope
+     */
+    public MeshScope child(int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight cannot be negative");
+        }
+
+        MeshScope child = new MeshScope(this, maxInFlight);
+        children.add(child);
+
+        if (closed) {
+            child.close();
+        }
+
+        return child;
+    }
+
+    /**
+     * Runs the given runnable in this scope, Meshes it creates belong to this scope.
+     *
+     * @param runnable the runnable to run
+     */
+    public void run(Runnable runnable) {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the given supplier in this scope, Meshes it creates belong to this scope.
+     *
+     * @param supplier the supplier to run
+     * @param <R>      the type of the supplier's result
+     * @return the supplier's result
+     */
+    public <R> R call(Supplier<R> supplier) {
+        Frame previous = CURRENT.get();
+        CURRENT.set(chainFrame);
+
+        try {
+            return supplier.get();
+        } finally {
+            setCurrent(previous);
+        }
+    }
+
+    /**
+     * Cancels every pending Mesh (and scheduled task) of this scope and its children, and cancels any Mesh created in it afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        List<Mesh<?>> pending = new ArrayList<>(tracked);
+        tracked.clear();
+        chainsInFlight.set(0);
+
+        for (Mesh<?> mesh : pending) {
+            mesh.cancel(new CancellationException("The MeshScope was closed"));
+        }
+
+        for (MeshScope child : new ArrayList<>(children)) {
+            child.close();
+        }
+
+        children.clear();
+
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the amount of chains (Meshes created directly in {@link #call(Supplier)}) which have not completed yet
+     */
+    public int getChainsInFlight() {
+        return chainsInFlight.get();
+    }
+
+    /**
+     * @return the amount of Meshes (chains and their stages) of this scope which have not completed yet
+     */
+    public int getPendingMeshes() {
+        return tracked.size();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Called when a pending Mesh is created in this scope.
+     *
+     * @param mesh  the Mesh
+     * @param chain if the Mesh counts as a chain (rather than being a stage of one, or created by its work)
+     */
+    void track(Mesh<?> mesh, boolean chain) {
+        if (closed) {
+            mesh.cancel(new CancellationException("The MeshScope was closed"));
+            return;
+        }
+
+        if (chain && chainsInFlight.incrementAndGet() > maxInFlight && maxInFlight > 0) {
+            chainsInFlight.decrementAndGet();
+            mesh.cancel(new RejectedExecutionException("The MeshScope already has " + maxInFlight + " chains in flight"));
+            return;
+        }
+
+        tracked.add(mesh);
+
+        if (closed && tracked.remove(mesh)) { // closed concurrently
+            mesh.cancel(new CancellationException("The MeshScope was closed"));
+        }
+    }
+
+    /**
+     * Called when a Mesh of this scope completes.
+     *
+     * @param mesh  the Mesh
+     * @param chain if the Mesh counts as a chain (rather than being a stage of one, or created by its work)
+     */
+    void untrack(Mesh<?> mesh, boolean chain) {
+        if (tracked.remove(mesh) && chain) {
+            chainsInFlight.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * The scope a thread is running in, and if the Meshes it creates count as chains.
+     */
+    static final class Frame {
+
+        private final MeshScope scope;
+        private final boolean countsChains;
+
+        private Frame(MeshScope scope, boolean countsChains) {
+            this.scope = scope;
+            this.countsChains = countsChains;
+        }
+
+        MeshScope getScope() {
+            return scope;
+        }
+
+        boolean countsChains() {
+            return countsChains;
+        }
+    }
+
+    private static final class DisableListener implements Listener {
+
+        private final MeshScope scope;
+
+        private DisableListener(MeshScope scope) {
+            this.scope = scope;
+        }
+
+        @EventHandler
+        public void onPluginDisable(PluginDisableEvent event) {
+            if (event.getPlugin() == PluginUtil.getPlugin()) {
+                scope.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+import static us.figt.mesh.utils.ThreadContext.ASYNC;
+import static us.figt.mesh.utils.ThreadContext.SYNC;
+
+/**
+ * Operators for the snapshot-then-compute pattern: capture world state on the main thread, crunch it in parallel
+ * asynchronously, then apply the results back on the main thread.
+ * <p>
+ * Capturing and applying are spread across ticks, each tick only doing as much as fits in the given budget (but always at
+ * least one item, so they make progress), so a large region or entity list doesn't stall the server for a tick.
+ * Cancelling the returned Mesh stops the remaining work.
+ *
+ * @author FigT
+ */
+public final class MeshSnapshot {
+
+    private MeshSnapshot() {
+        throw new AssertionError("Utility class cannot be instantiated"); // seal
+    }
+
+    /**
+     * Captures the given sources <strong>synchronously</strong>, spread across ticks within the budget.
+     *
+     * @param sources the sources to capture
+     * @param capture copies what's needed from a source, returning null skips it
+     * @param budget  how long capturing may take per tick
+     * @param unit    the unit of the budget
+     * @param <S>     the type of the sources
+     * @param <C>     the type of the captured copies
+     * @return a Mesh completed with the captured copies, in the order of the sources
+     */
+    public static <S, C> Mesh<List<C>> capture(Collection<? extends S> sources, Function<? super S, ? extends C> capture, long budget, TimeUnit unit) {
+        List<S> copy = new ArrayList<>(sources);
+
+        return capture(() -> copy, capture, budget, unit);
+    }
+
+    /**
+     * Captures the loaded chunks within the given region <strong>synchronously</strong>, spread across ticks within the
+     * budget. Chunks which aren't loaded are skipped rather than loaded on the main thread.
+     *
+     * @param world     the world
+     * @param minChunkX the lowest chunk x coordinate, inclusive
+     * @param minChunkZ the lowest chunk z coordinate, inclusive
+     * @param maxChunkX the highest chunk x coordinate, inclusive
+     * @param maxChunkZ the highest chunk z coordinate, inclusive
+     * @param budget    how long capturing may take per tick
+     * @param unit      the unit of the budget
+     * @return a Mesh completed with the snapshots of the loaded chunks
+     */
+    public static Mesh<List<ChunkSnapshot>> chunks(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, long budget, TimeUnit unit) {
+        List<int[]> coordinates = new ArrayList<>();
+
+        for (int x = minChunkX; x <= maxChunkX; x++) {
+            for (int z = minChunkZ; z <= maxChunkZ; z++) {
+                coordinates.add(new int[]{x, z});
+            }
+        }
+
+        return capture(() -> coordinates, coordinate -> {
+            int x = coordinate[0];
+            int z = coordinate[1];
+
+            return world.isChunkLoaded(x, z) ? world.getChunkAt(x, z).getChunkSnapshot() : null;
+        }, budget, unit);
+    }
+
+    /**
+     * Captures compact copies of the world's entities <strong>synchronously</strong>, spread across ticks within the
+     * budget. The entity list is taken on the first tick, entities which are no longer valid by the time they are reached
+     * are skipped.
+     *
+     * @param world  the world
+     * @param copy   copies what's needed from an entity, returning null skips it
+     * @param budget how long capturing may take per tick
+     * @param unit   the unit of the budget
+     * @param <C>    the type of the copies
+     * @return a Mesh completed with the copies
+     */
+    public static <C> Mesh<List<C>> entities(World world, Function<? super Entity, ? extends C> copy, long budget, TimeUnit unit) {
+        return capture(world::getEntities, entity -> entity.isValid() ? copy.apply(entity) : null, budget, unit);
+    }
+
+    /**
+     * Computes the given function over each of the captured copies, <strong>asynchronously</strong> and in parallel.
+     *
+     * @param captured the captured copies
+     * @param function the computation, which must not touch the world
+     * @param <C>      the type of the captured copies
+     * @param <R>      the type of the results
+     * @return a Mesh completed with the results, in the order of the copies
+     */
+    public static <C, R> Mesh<List<R>> compute(List<? extends C> captured, Function<? super C, ? extends R> function) {
+        if (captured.isEmpty()) {
+            return Mesh.createCompletedMesh(Collections.emptyList());
+        }
+
+        Mesh<List<R>> mesh = Mesh.createMesh();
+        int slices = Math.min(captured.size(), Runtime.getRuntime().availableProcessors());
+        Object[] results = new Object[captured.size()];
+        AtomicInteger remaining = new AtomicInteger(slices);
+
+        for (int slice = 0; slice < slices; slice++) {
+            int from = (int) ((long) captured.size() * slice / slices);
+            int to = (int) ((long) captured.size() * (slice + 1) / slices);
+
+            MeshRunnables.run(() -> {
+                try {
+                    for (int i = from; i < to && !mesh.getCompletableFuture().isDone(); i++) {
+                        results[i] = function.apply(captured.get(i));
+                    }
+                } catch (Throwable throwable) {
+                    mesh.completeExceptionally(throwable);
+                    return;
+                }
+
+                if (remaining.decrementAndGet() == 0) {
+                    @SuppressWarnings("unchecked")
+                    List<R> list = (List<R>) Arrays.asList(results);
+                    mesh.complete(list);
+                }
+            }, ASYNC, NO_DElAY);
+        }
+
+        return mesh;
+    }
+
+    /**
+     * Applies the given results <strong>synchronously</strong>, spread across ticks within the budget. Null results
+     * are skipped.
+     *
+     * @param results the results to apply
+     * @param apply   applies a result to the world
+     * @param budget  how long applying may take per tick
+     * @param unit    the unit of the budget
+     * @param <R>     the type of the results
+     * @return a Mesh completed with how many results were applied
+     */
+    public static <R> Mesh<Integer> apply(Collection<? extends R> results, Consumer<? super R> apply, long budget, TimeUnit unit) {
+        List<R> copy = new ArrayList<>(results);
+        Mesh<Integer> mesh = Mesh.createMesh();
+
+        start(new Batch<R, Integer>(mesh, () -> copy, unit.toNanos(budget)) {
+            private int applied = 0;
+
+            @Override
+            void process(R result) {
+                if (result != null) {
+                    apply.accept(result);
+                    applied++;
+                }
+            }
+
+            @Override
+            Integer result() {
+                return applied;
+            }
+        });
+
+        return mesh;
+    }
+
+    /**
+     * Captures the given sources <strong>synchronously</strong>, computes over the copies <strong>asynchronously</strong>
+     * and in parallel, then applies the results <strong>synchronously</strong>, with capturing and applying spread
+     * across ticks within the budget.
+     *
+     * @param sources the sources to capture
+     * @param capture copies what's needed from a source, returning null skips it
+     * @param compute the computation, which must not touch the world, returning null means there is nothing to apply
+     * @param apply   applies a result to the world
+     * @param budget  how long capturing and applying may each take per tick
+     * @param unit    the unit of the budget
+     * @param <S>     the type of the sources
+     * @param <C>     the type of the captured copies
+     * @param <R>     the type of the results
+     * @return a Mesh completed with how many results were applied
+     */
+    public static <S, C, R> Mesh<Integer> process(Collection<? extends S> sources, Function<? super S, ? extends C> capture,
+                                                  Function<? super C, ? extends R> compute, Consumer<? super R> apply,
+                                                  long budget, TimeUnit unit) {
+        return MeshSnapshot.<S, C>capture(sources, capture, budget, unit)
+                .thenCompose(captured -> MeshSnapshot.<C, R>compute(captured, compute))
+                .thenCompose(results -> apply(results, apply, budget, unit));
+    }
+
+
+    private static <S, C> Mesh<List<C>> capture(Supplier<? extends List<? extends S>> sources, Function<? super S, ? extends C> capture, long budget, TimeUnit unit) {
+        Mesh<List<C>> mesh = Mesh.createMesh();
+
+        start(new Batch<S, List<C>>(mesh, sources, unit.toNanos(budget)) {
+            private final List<C> captured = new ArrayList<>();
+
+            @Override
+            void process(S source) {
+                C copy = capture.apply(source);
+
+                if (copy != null) {
+                    captured.add(copy);
+                }
+            }
+
+            @Override
+            List<C> result() {
+                return captured;
+            }
+        });
+
+        return mesh;
+    }
+
+    private static void start(Batch<?, ?> batch) {
+        MeshRunnables.run(batch, SYNC, NO_DElAY); // runs right away if we're on the main thread, else next tick
+    }
+
+
+    /**
+     * Works through a list on the main thread, as much as fits in the budget each tick.
+     */
+    private abstract static class Batch<S, T> implements Runnable {
+        private final Mesh<T> mesh;
+        private final Supplier<? extends List<? extends S>> sources;
+        private final long budgetNanos;
+        private List<? extends S> list = null;
+        private int index = 0;
+
+        Batch(Mesh<T> mesh, Supplier<? extends List<? extends S>> sources, long budgetNanos) {
+            this.mesh = mesh;
+            this.sources = sources;
+            this.budgetNanos = budgetNanos;
+        }
+
+        abstract void process(S source);
+
+        abstract T result();
+
+        @Override
+        public void run() {
+            if (mesh.getCompletableFuture().isDone()) {
+                return; // cancelled
+            }
+
+            long deadline = System.nanoTime() + budgetNanos;
+
+            try {
+                if (list == null) {
+                    list = sources.get(); // taken on the main thread
+                }
+
+                while (index < list.size()) {
+                    process(list.get(index++));
+
+                    if (System.nanoTime() - deadline >= 0L) {
+                        break;
+                    }
+                }
+            } catch (Throwable throwable) {
+                mesh.completeExceptionally(throwable);
+                return;
+            }
+
+            if (index < list.size()) {
+                mesh.setPendingTask(MeshRunnables.run(this, SYNC, 1L)); // carry on next tick
+            } else {
+                mesh.complete(result());
+            }
+        }
+    }
+}
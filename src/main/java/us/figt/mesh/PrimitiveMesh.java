@@ -0,0 +1,518 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.ThreadContext;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The completion state and stage plumbing shared by the primitive Meshes ({@link IntMesh}, {@link LongMesh} and
+ * {@link DoubleMesh}), the subclasses only add what depends on the type of their value.
+ * <p>
+ * Unlike {@link Mesh}, which is backed by a CompletableFuture (and so boxes its value), subclasses store their value in
+ * a primitive field. Dependents are kept in a lock-free stack of {@link Continuation}s, each stage being a
+ * {@link Stage} and the (primitive) lambda which reads the source's value and completes the target with it.
+ * <p>
+ * To stay that cheap, primitive Meshes can't be cancelled, and are not covered by {@link MeshScope}s, the leak detector
+ * or {@link Mesh#joinSync(long, java.util.concurrent.TimeUnit)}. Convert a primitive Mesh with {@code boxed()} where
+ * any of those are needed.
+ *
+ * @author FigT
+ */
+abstract class PrimitiveMesh {
+
+    private static final int PENDING = 0;
+    private static final int COMPLETING = 1; // the value is being written
+    private static final int NORMAL = 2;
+    private static final int EXCEPTIONAL = 3;
+
+    private static final AtomicIntegerFieldUpdater<PrimitiveMesh> STATE = AtomicIntegerFieldUpdater.newUpdater(PrimitiveMesh.class, "state");
+    private static final AtomicReferenceFieldUpdater<PrimitiveMesh, Continuation> STACK = AtomicReferenceFieldUpdater.newUpdater(PrimitiveMesh.class, Continuation.class, "stack");
+
+    private static final Continuation CLOSED = new Continuation() { // marks that the dependents have already been fired
+        @Override
+        void onComplete() {
+
+        }
+
+        @Override
+        void fail(Throwable throwable) {
+
+        }
+    };
+
+    private volatile int state = PENDING;
+    private volatile Continuation stack = null;
+    private Throwable throwable = null; // published by the write to state
+
+    /**
+     * Claims the right to complete this Mesh, the subclass then writes its value and calls {@link #finishCompleting()}.
+     *
+     * @return true if this Mesh was not already completed
+     */
+    final boolean startCompleting() {
+        return STATE.compareAndSet(this, PENDING, COMPLETING);
+    }
+
+    final void finishCompleting() {
+        state = NORMAL;
+        fire();
+    }
+
+    /**
+     * If not already completed, completes this Mesh with the given exception.
+     *
+     * @param throwable the exception
+     * @return true if this call completed the Mesh
+     */
+    public boolean completeExceptionally(Throwable throwable) {
+        if (!startCompleting()) {
+            return false;
+        }
+
+        this.throwable = throwable;
+        state = EXCEPTIONAL;
+        fire();
+
+        if (Mesh.isDebugMode()) MeshExceptionReporter.report(throwable); // debug exception
+        return true;
+    }
+
+    public boolean isDone() {
+        return state >= NORMAL;
+    }
+
+    public boolean isCompletedExceptionally() {
+        return state == EXCEPTIONAL;
+    }
+
+    /**
+     * @return the exception this Mesh was completed with, or null
+     */
+    final Throwable getThrowable() {
+        return state == EXCEPTIONAL ? throwable : null;
+    }
+
+    /**
+     * Runs the given continuation once this Mesh is complete (right away if it already is).
+     *
+     * @param continuation the continuation to run
+     */
+    final void onComplete(Continuation continuation) {
+        while (true) {
+            Continuation head = stack;
+
+            if (head == CLOSED) {
+                notifyCompleted(continuation);
+                return;
+            }
+
+            continuation.next = head;
+
+            if (STACK.compareAndSet(this, head, continuation)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Converts this Mesh to a regular Mesh, boxing its value once.
+     *
+     * @param value gets the (boxed) value of this Mesh, once it has completed normally
+     * @param <T>   the boxed type
+     * @return the new Mesh instance
+     */
+    final <T> Mesh<T> toMesh(Supplier<T> value) {
+        Mesh<T> newMesh = Mesh.createMesh();
+
+        onComplete(new Continuation() {
+            @Override
+            void onComplete() {
+                if (isCompletedExceptionally()) {
+                    newMesh.completeExceptionally(getThrowable());
+                } else {
+                    newMesh.complete(value.get());
+                }
+            }
+
+            @Override
+            void fail(Throwable throwable) {
+                newMesh.completeExceptionally(throwable);
+            }
+        });
+
+        return newMesh;
+    }
+
+    /**
+     * Completes the given (new) Mesh with the value of the given body, run in the given thread context.
+     *
+     * @param target        the Mesh to complete
+     * @param threadContext the thread context to run the body in
+     * @param delay         the delay (<strong>in ticks</strong>) to wait to run the body
+     * @param body          completes the target
+     * @param <M>           the type of the Mesh
+     * @return the given Mesh
+     */
+    static <M extends PrimitiveMesh> M supply(M target, ThreadContext threadContext, long delay, Consumer<M> body) {
+        MeshRunnables.run(() -> {
+            try {
+                body.accept(target);
+            } catch (Throwable throwable) {
+                target.completeExceptionally(throwable);
+            }
+        }, threadContext, delay);
+
+        return target;
+    }
+
+    /**
+     * Completes the given (new) Mesh once the given regular Mesh completes, converting its value with the given body.
+     *
+     * @param mesh   the Mesh to convert
+     * @param target the primitive Mesh to complete
+     * @param body   completes the target with the (converted) value
+     * @param <T>    the type of the Mesh
+     * @param <M>    the type of the primitive Mesh
+     * @return the given primitive Mesh
+     */
+    static <T, M extends PrimitiveMesh> M fromMesh(Mesh<T> mesh, M target, BiConsumer<M, T> body) {
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                target.completeExceptionally(throwable);
+                return;
+            }
+
+            try {
+                body.accept(target, value);
+            } catch (Throwable t) {
+                target.completeExceptionally(t);
+            }
+        });
+
+        return target;
+    }
+
+    /**
+     * Adds a stage to the given source, which runs the given body in the given thread context once the source has
+     * completed normally, and otherwise fails the target.
+     *
+     * @param source        the Mesh the stage depends on
+     * @param target        the (new) Mesh or primitive Mesh the body completes
+     * @param threadContext the thread context to run the body in
+     * @param delay         the delay (<strong>in ticks</strong>) to wait to run the body
+     * @param body          completes the target with the source's value
+     * @param <S>           the type of the source
+     * @param <R>           the type of the target
+     * @return the target
+     */
+    static <S extends PrimitiveMesh, R> R then(S source, R target, ThreadContext threadContext, long delay, Body<S, R> body) {
+        source.onComplete(new Stage<>(source, target, threadContext, delay, body));
+        return target;
+    }
+
+    /**
+     * Adds a stage to the given source, which runs the given body in the given thread context if the source has
+     * completed exceptionally, and otherwise passes its value on to the target.
+     *
+     * @param source        the Mesh the stage depends on
+     * @param target        the (new) primitive Mesh to complete
+     * @param threadContext the thread context to run the body in
+     * @param passOn        completes the target with the source's value
+     * @param body          completes the target with a value recovered from the source's exception
+     * @param <S>           the type of the source and target
+     * @return the target
+     */
+    static <S extends PrimitiveMesh> S recover(S source, S target, ThreadContext threadContext, Body<S, S> passOn, Body<S, S> body) {
+        source.onComplete(new Recovery<>(source, target, threadContext, passOn, body));
+        return target;
+    }
+
+    /**
+     * Completes the given (new) Mesh with the given reduction, once all of the given Meshes have completed.
+     *
+     * @param meshes    the Meshes to reduce
+     * @param reduction the reduction, which completes its target
+     * @param <M>       the type of the Meshes
+     * @return the target of the reduction
+     */
+    static <M extends PrimitiveMesh> M reduce(M[] meshes, Reduction<M> reduction) {
+        for (M mesh : meshes) {
+            mesh.onComplete(new ReduceStage<>(mesh, reduction));
+        }
+
+        return reduction.target;
+    }
+
+    /**
+     * Completes the given (new) Mesh with a {@link NoSuchElementException}, for picking a value out of no Meshes.
+     *
+     * @param newMesh the Mesh to complete
+     * @param <M>     the type of the Mesh
+     * @return the given Mesh
+     */
+    static <M extends PrimitiveMesh> M failedEmpty(M newMesh) {
+        newMesh.completeExceptionally(new NoSuchElementException("There is no value to pick from an empty set of " + newMesh.getClass().getSimpleName() + "es"));
+        return newMesh;
+    }
+
+    private void fire() {
+        Continuation head = STACK.getAndSet(this, CLOSED);
+
+        // the stack is LIFO, reverse it so dependents run in the order they were added
+        Continuation ordered = null;
+        while (head != null) {
+            Continuation next = head.next;
+            head.next = ordered;
+            ordered = head;
+            head = next;
+        }
+
+        while (ordered != null) {
+            Continuation next = ordered.next;
+            ordered.next = null;
+
+            notifyCompleted(ordered);
+            ordered = next;
+        }
+    }
+
+    private static void notifyCompleted(Continuation continuation) {
+        try {
+            continuation.onComplete();
+        } catch (Throwable throwable) {
+            // e.g. the stage could not be dispatched, its target would otherwise never complete
+            try {
+                continuation.fail(throwable);
+            } catch (Throwable t) {
+                if (Mesh.isDebugMode()) MeshExceptionReporter.report(t);
+            }
+        }
+    }
+
+    /**
+     * Completes the given target (a Mesh or a primitive Mesh) with the given exception.
+     */
+    private static void failTarget(Object target, Throwable throwable) {
+        if (target instanceof PrimitiveMesh) {
+            ((PrimitiveMesh) target).completeExceptionally(throwable);
+        } else {
+            ((Mesh<?>) target).completeExceptionally(throwable);
+        }
+    }
+
+
+    /**
+     * A dependent of a primitive Mesh, which is also the node of its stack.
+     */
+    abstract static class Continuation {
+
+        private Continuation next = null;
+
+        /**
+         * Called once the Mesh this was added to is complete.
+         */
+        abstract void onComplete();
+
+        /**
+         * Called with the exception thrown by {@link #onComplete()}, completes whatever this continuation would have completed.
+         *
+         * @param throwable the exception
+         */
+        abstract void fail(Throwable throwable);
+    }
+
+    /**
+     * Completes the target of a stage, with the value of the source.
+     *
+     * @param <S> the type of the source
+     * @param <R> the type of the target
+     */
+    @FunctionalInterface
+    interface Body<S, R> {
+
+        void run(S source, R target) throws Exception;
+    }
+
+    /**
+     * A stage which runs in a thread context once its source has completed normally, the continuation and the dispatched task are the same object.
+     *
+     * @param <S> the type of the source
+     * @param <R> the type of the target
+     */
+    static class Stage<S extends PrimitiveMesh, R> extends Continuation implements Runnable {
+
+        final S source;
+        final R target; // the Mesh or primitive Mesh this stage completes
+        final ThreadContext threadContext;
+        final long delay;
+        private final Body<S, R> body;
+
+        Stage(S source, R target, ThreadContext threadContext, long delay, Body<S, R> body) {
+            this.source = source;
+            this.target = target;
+            this.threadContext = threadContext;
+            this.delay = delay;
+            this.body = body;
+        }
+
+        @Override
+        void onComplete() {
+            if (source.isCompletedExceptionally()) {
+                fail(source.getThrowable());
+            } else {
+                MeshRunnables.run(this, threadContext, delay);
+            }
+        }
+
+        @Override
+        final void fail(Throwable throwable) {
+            failTarget(target, throwable);
+        }
+
+        @Override
+        public void run() {
+            try {
+                body.run(source, target);
+            } catch (Throwable throwable) {
+                fail(throwable);
+            }
+        }
+    }
+
+    /**
+     * A stage which only runs if its source has completed exceptionally, and otherwise passes the source's value on.
+     *
+     * @param <S> the type of the source and target
+     */
+    static final class Recovery<S extends PrimitiveMesh> extends Stage<S, S> {
+
+        private final Body<S, S> passOn;
+
+        Recovery(S source, S target, ThreadContext threadContext, Body<S, S> passOn, Body<S, S> body) {
+            super(source, target, threadContext, MeshRunnables.NO_DElAY, body);
+            this.passOn = passOn;
+        }
+
+        @Override
+        void onComplete() {
+            if (source.isCompletedExceptionally()) {
+                MeshRunnables.run(this, threadContext, delay);
+            } else {
+                try {
+                    passOn.run(source, target);
+                } catch (Throwable throwable) {
+                    fail(throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * Combines the values of a set of Meshes into its target, the subclass holds the accumulator.
+     *
+     * @param <M> the type of the Meshes
+     */
+    abstract static class Reduction<M extends PrimitiveMesh> {
+
+        final M target;
+        private int remaining;
+
+        Reduction(M target, int remaining) {
+            this.target = target;
+            this.remaining = remaining;
+        }
+
+        /**
+         * Combines the value of the given Mesh into the accumulator, called while holding the lock.
+         *
+         * @param source the completed Mesh
+         */
+        abstract void accumulate(M source);
+
+        /**
+         * Completes the target with the accumulator, once every Mesh has been accumulated.
+         */
+        abstract void finish();
+
+        private void accept(M source) {
+            Throwable failure = null;
+
+            synchronized (this) {
+                if (remaining == 0) { // the operator already threw
+                    return;
+                }
+
+                try {
+                    accumulate(source);
+                } catch (Throwable throwable) {
+                    failure = throwable;
+                    remaining = 0;
+                }
+
+                if (failure == null && --remaining > 0) {
+                    return;
+                }
+            }
+
+            if (failure != null) {
+                target.completeExceptionally(failure);
+            } else {
+                finish();
+            }
+        }
+    }
+
+    private static final class ReduceStage<M extends PrimitiveMesh> extends Continuation {
+
+        private final M source;
+        private final Reduction<M> reduction;
+
+        private ReduceStage(M source, Reduction<M> reduction) {
+            this.source = source;
+            this.reduction = reduction;
+        }
+
+        @Override
+        void onComplete() {
+            if (source.isCompletedExceptionally()) {
+                reduction.target.completeExceptionally(source.getThrowable()); // first failure wins
+            } else {
+                reduction.accept(source);
+            }
+        }
+
+        @Override
+        void fail(Throwable throwable) {
+            reduction.target.completeExceptionally(throwable);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * How a failed attempt is retried by {@link Mesh#retry(java.util.function.Supplier, RetryPolicy)}: how many attempts
+ * are made, which failures are retried, and how long to back off between attempts.
+ * <p>
+ * The backoff grows exponentially up to a maximum, with random jitter so the chains which failed together (e.g. because a
+ * database blipped) don't all retry at the same moment. Attempts are scheduled on Mesh's shared timer, no thread sleeps
+ * while backing off. An optional {@link CircuitBreaker} is checked before each attempt.
+ *
+ * @author FigT
+ */
+public final class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final double multiplier;
+    private final double jitter;
+    private final Predicate<? super Throwable> retryOn;
+    private final CircuitBreaker circuitBreaker;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialDelayNanos = builder.initialDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryOn = builder.retryOn;
+        this.circuitBreaker = builder.circuitBreaker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param throwable the failure of an attempt
+     * @return if the failure should be retried
+     */
+    boolean shouldRetry(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        if (cause instanceof CancellationException || cause instanceof CircuitOpenException) {
+            return false; // cancelled on purpose, or the backend is known to be down
+        }
+
+        return retryOn.test(cause);
+    }
+
+    /**
+     * @param attempt the attempt which just failed, starting at 1
+     * @return how long to back off before the next attempt (<strong>in nanoseconds</strong>)
+     */
+    long delayNanos(int attempt) {
+        double delay = Math.min(maxDelayNanos, initialDelayNanos * Math.pow(multiplier, attempt - 1));
+
+        return (long) (delay * (1D - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+
+    public static final class Builder {
+
+        private int maxAttempts = 3;
+        private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(100L);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10L);
+        private double multiplier = 2D;
+        private double jitter = 0.5D;
+        private Predicate<? super Throwable> retryOn = throwable -> true;
+        private CircuitBreaker circuitBreaker = null;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts the maximum amount of attempts, including the first
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialDelay the backoff after the first failed attempt
+         * @param maxDelay     the maximum backoff
+         * @param unit         the unit of the delays
+         */
+        public Builder backoff(long initialDelay, long maxDelay, TimeUnit unit) {
+            this.initialDelayNanos = unit.toNanos(initialDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param multiplier what the backoff is multiplied by after each failed attempt
+         */
+        public Builder multiplier(double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param jitter the fraction of the backoff which is random, from 0 (none) to 1 (anywhere between 0 and the backoff)
+         */
+        public Builder jitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param retryOn which failures are retried, cancellations and open circuits never are
+         */
+        public Builder retryOn(Predicate<? super Throwable> retryOn) {
+            this.retryOn = retryOn;
+            return this;
+        }
+
+        /**
+         * @param circuitBreaker the circuit breaker each attempt goes through
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+
+            if (initialDelayNanos < 0L || maxDelayNanos < initialDelayNanos) {
+                throw new IllegalArgumentException("The delays cannot be negative, and maxDelay cannot be below initialDelay");
+            }
+
+            if (multiplier < 1D || jitter < 0D || jitter > 1D) {
+                throw new IllegalArgumentException("multiplier must be at least 1, and jitter between 0 and 1");
+            }
+
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static us.figt.mesh.MeshRunnables.NO_DElAY;
+
+/**
+ * The queue of SYNC work submitted from off the main thread.
+ * <p>
+ * Rather than a scheduler task per runnable, a single drain task is scheduled whenever the queue goes from empty to
+ * non-empty. Since the queue is owned by Mesh, a main thread blocked in {@link Mesh#joinSync} can run it while it waits.
+ *
+ * @author FigT
+ */
+final class SyncQueue {
+
+    private static final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private static volatile Thread waiter = null; // the main thread, while it's waiting in joinSync
+
+    private SyncQueue() {
+        throw new AssertionError("Container class cannot be instantiated"); // seal
+    }
+
+    static void submit(Runnable runnable) {
+        queue.add(runnable);
+
+        Thread waiting = waiter;
+        if (waiting != null) {
+            LockSupport.unpark(waiting); // it will run the task itself
+        }
+
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                SchedulerUtil.getScheduler().runSync(SyncQueue::drain, NO_DElAY);
+            } catch (Throwable throwable) {
+                queue.remove(runnable); // unless the main thread has already run it
+                drainScheduled.set(false); // let the next submit try again, rather than never draining
+                throw throwable;
+            }
+        }
+    }
+
+    static boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Runs the queued tasks, this must be called on the main thread.
+     *
+     * @return the amount of tasks which were run
+     */
+    static int runPending() {
+        int ran = 0;
+
+        for (Runnable next; (next = queue.poll()) != null; ran++) {
+            try {
+                next.run();
+            } catch (Throwable throwable) {
+                PluginUtil.logException("Mesh sync task generated an exception", throwable);
+            }
+        }
+
+        return ran;
+    }
+
+    static Thread setWaiter(Thread thread) {
+        Thread previous = waiter;
+        waiter = thread;
+
+        return previous;
+    }
+
+    private static void drain() {
+        drainScheduled.set(false); // anything submitted from now on schedules another drain
+        runPending();
+    }
+}
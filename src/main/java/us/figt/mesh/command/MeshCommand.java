@@ -0,0 +1,371 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.command;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerQuitEvent;
+import us.figt.mesh.Mesh;
+import us.figt.mesh.MeshScope;
+import us.figt.mesh.utils.PluginUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A command which runs off the main thread: arguments are parsed and validated, and data is fetched, <strong>asynchronously</strong>,
+ * and only the response is handed back to the main thread.
+ * <p>
+ * Each sender may only have a limited amount of invocations in flight, and a player's invocations are cancelled when they
+ * quit. Tab completions are computed <strong>asynchronously</strong> and cached per sender, the main thread never waits
+ * on them: while nothing is cached yet for the arguments being completed there are no candidates, and stale ones are
+ * shown while they're refreshed. Other senders (e.g. the console) are forgotten once they have nothing in flight and no
+ * fresh completions.
+ *
+ * @param <P> the type of the parsed arguments
+ * @param <R> the type of the fetched result
+ * @author FigT
+ */
+public abstract class MeshCommand<P, R> implements CommandExecutor, TabCompleter {
+
+    private static final int MAX_CACHED_COMPLETIONS = 64; // per sender
+
+    private final int maxPerSender;
+    private final long completionTtlNanos;
+    private final Map<Object, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxPerSender       how many invocations a sender may have in flight at once
+     * @param completionTtl      how long tab completions are cached for
+     * @param completionTtlUnit  the unit of the completion ttl
+     */
+    protected MeshCommand(int maxPerSender, long completionTtl, TimeUnit completionTtlUnit) {
+        if (maxPerSender < 1) {
+            throw new IllegalArgumentException("maxPerSender must be at least 1");
+        }
+
+        this.maxPerSender = maxPerSender;
+        this.completionTtlNanos = completionTtlUnit.toNanos(completionTtl);
+    }
+
+    /**
+     * Allows one invocation in flight per sender, and caches tab completions for 30 seconds.
+     */
+    protected MeshCommand() {
+        this(1, 30L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Parses and validates the arguments, <strong>asynchronously</strong>.
+     *
+     * @param sender the sender
+     * @param args   the arguments
+     * @return the parsed arguments
+     * @throws IllegalArgumentException if the arguments are invalid, it is given to {@link #onInvalidArguments(CommandSender, IllegalArgumentException)}
+     */
+    protected abstract P parse(CommandSender sender, String[] args);
+
+    /**
+     * Fetches the data the response needs, called <strong>asynchronously</strong>. Blocking work can simply be done here
+     * and returned with {@link Mesh#createCompletedMesh(Object)}, an asynchronous source can return its own Mesh.
+     *
+     * @param sender the sender
+     * @param parsed the parsed arguments
+     * @return the Mesh which completes with the result
+     */
+    protected abstract Mesh<R> fetch(CommandSender sender, P parsed);
+
+    /**
+     * Responds to the sender, <strong>synchronously</strong>.
+     *
+     * @param sender the sender
+     * @param result the fetched result
+     */
+    protected abstract void respond(CommandSender sender, R result);
+
+    /**
+     * Gets the candidates for the next argument, <strong>asynchronously</strong>. Candidates are cached per sender, by
+     * the arguments before them, and filtered by what has been typed of the argument.
+     *
+     * @param sender   the sender
+     * @param previous the arguments before the one being completed
+     * @return the candidates
+     */
+    protected List<String> complete(CommandSender sender, String[] previous) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Tells the sender their arguments are invalid, <strong>synchronously</strong>.
+     *
+     * @param sender    the sender
+     * @param exception the exception thrown by {@link #parse(CommandSender, String[])}
+     */
+    protected void onInvalidArguments(CommandSender sender, IllegalArgumentException exception) {
+        sender.sendMessage(exception.getMessage());
+    }
+
+    /**
+     * Tells the sender their invocation failed, <strong>synchronously</strong>. Invalid arguments and cancelled
+     * invocations (e.g. because the sender quit) don't get here, but anything else thrown while fetching or responding
+     * does (including IllegalArgumentExceptions, whose messages are not meant for the sender).
+     *
+     * @param sender    the sender
+     * @param throwable why it failed
+     */
+    protected void onFailure(CommandSender sender, Throwable throwable) {
+        sender.sendMessage("An internal error occurred while attempting to perform this command");
+        PluginUtil.logException("Mesh-Command - " + getClass().getSimpleName() + " failed for " + sender.getName(), throwable);
+    }
+
+    /**
+     * Tells the sender they already have too many invocations in flight, <strong>synchronously</strong>.
+     *
+     * @param sender the sender
+     */
+    protected void onBusy(CommandSender sender) {
+        sender.sendMessage("Please wait for your previous command to finish.");
+    }
+
+    /**
+     * Sets this as the executor and tab completer of the plugin's command with the given name.
+     *
+     * @param name the name of the command, as in the plugin.yml
+     */
+    public void register(String name) {
+        PluginCommand command = PluginUtil.getPlugin().getCommand(name);
+
+        if (command == null) {
+            throw new IllegalArgumentException("The command " + name + " is not in the plugin.yml");
+        }
+
+        command.setExecutor(this);
+        command.setTabCompleter(this);
+    }
+
+    /**
+     * @param sender the sender
+     * @return how many invocations the sender has in flight
+     */
+    public int getInFlight(CommandSender sender) {
+        Session session = sessions.get(key(sender));
+        return session == null ? 0 : session.inFlight.get();
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        Session session = sessions.compute(key(sender), (key, existing) -> {
+            Session current = existing != null ? existing : open(sender, key);
+            current.inFlight.incrementAndGet(); // while holding the entry, so an idle session can't be dropped in between
+
+            return current;
+        });
+
+        if (session.inFlight.get() > maxPerSender) {
+            session.inFlight.decrementAndGet();
+            onBusy(sender);
+            return true;
+        }
+
+        String[] copy = args.clone();
+
+        Mesh<Void> invocation = session.scope.call(() -> Mesh.<P>createMesh()
+                .supplyAsync(() -> {
+                    try {
+                        return parse(sender, copy);
+                    } catch (IllegalArgumentException e) {
+                        throw new InvalidArguments(e); // so it can't be mistaken for one thrown by a later stage
+                    }
+                })
+                .composeAsync(parsed -> fetch(sender, parsed))
+                .acceptSync(result -> respond(sender, result))
+                .exceptionallySync(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+                    if (cause instanceof InvalidArguments) {
+                        onInvalidArguments(sender, (IllegalArgumentException) cause.getCause());
+                    } else if (!(cause instanceof CancellationException)) {
+                        onFailure(sender, cause);
+                    }
+
+                    return null;
+                }));
+
+        // however it ends, even if the session's scope is closed
+        invocation.toCompletableFuture().whenComplete((ignored, throwable) -> {
+            session.inFlight.decrementAndGet();
+            dropIdleSenders();
+        });
+
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 0) {
+            return Collections.emptyList();
+        }
+
+        Session session = sessions.computeIfAbsent(key(sender), key -> open(sender, key));
+        String[] previous = Arrays.copyOf(args, args.length - 1);
+        String key = previous.length + ":" + String.join(" ", previous).toLowerCase(Locale.ROOT);
+
+        Completion completion = session.completions.computeIfAbsent(key, k -> new Completion(null, 0L));
+
+        if (!completion.isFresh(System.nanoTime()) && completion.refreshing.compareAndSet(false, true)) {
+            Mesh.createSupplyingAsyncMesh(() -> complete(sender, previous))
+                    .acceptAsync(candidates -> session.completions.put(key, new Completion(candidates, System.nanoTime())))
+                    .exceptionallyAsync(throwable -> {
+                        completion.refreshing.set(false); // try again next time
+                        return null;
+                    });
+        }
+
+        // never waits: without cached candidates there are none yet, stale ones are returned while they're refreshed
+        List<String> candidates = completion.candidates != null ? completion.candidates : Collections.emptyList();
+        String typed = args[args.length - 1].toLowerCase(Locale.ROOT);
+        List<String> matching = new ArrayList<>();
+
+        for (String candidate : candidates) {
+            if (candidate.toLowerCase(Locale.ROOT).startsWith(typed)) {
+                matching.add(candidate);
+            }
+        }
+
+        return matching;
+    }
+
+    private Session open(CommandSender sender, Object key) {
+        Session session = new Session(MeshScope.create(), sender instanceof Player);
+
+        if (session.player) {
+            // a player's invocations (and the session) end when they quit
+            Mesh.awaitEvent(PlayerQuitEvent.class, ((Player) sender).getUniqueId(), null, 0L, TimeUnit.SECONDS)
+                    .acceptAsync(event -> {
+                        sessions.remove(key, session);
+                        session.scope.close();
+                    });
+        }
+
+        return session;
+    }
+
+    /**
+     * Forgets the sessions of senders which aren't players, and have nothing in flight and no fresh completions. Checked
+     * whenever an invocation ends, since they might never run this command again (a player's session is only forgotten
+     * once they quit).
+     */
+    private void dropIdleSenders() {
+        long now = System.nanoTime();
+
+        for (Map.Entry<Object, Session> entry : sessions.entrySet()) {
+            if (!entry.getValue().player) {
+                sessions.computeIfPresent(entry.getKey(), (key, session) -> session.isIdle(now) ? null : session);
+            }
+        }
+    }
+
+    /**
+     * @return how many senders currently have a session
+     */
+    int getSessionCount() {
+        return sessions.size();
+    }
+
+    private static Object key(CommandSender sender) {
+        return sender instanceof Player ? ((Player) sender).getUniqueId() : sender.getName();
+    }
+
+
+    private final class Session {
+        private final MeshScope scope;
+        private final boolean player;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Map<String, Completion> completions = Collections.synchronizedMap(new LinkedHashMap<String, Completion>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Completion> eldest) {
+                return size() > MAX_CACHED_COMPLETIONS;
+            }
+        });
+
+        private Session(MeshScope scope, boolean player) {
+            this.scope = scope;
+            this.player = player;
+        }
+
+        private boolean isIdle(long now) {
+            if (inFlight.get() > 0) {
+                return false;
+            }
+
+            synchronized (completions) {
+                for (Completion completion : completions.values()) {
+                    if (completion.isFresh(now) || completion.refreshing.get()) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private final class Completion {
+        private final List<String> candidates; // null until first computed
+        private final long computedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Completion(List<String> candidates, long computedAt) {
+            this.candidates = candidates;
+            this.computedAt = computedAt;
+        }
+
+        private boolean isFresh(long now) {
+            return candidates != null && now - computedAt <= completionTtlNanos;
+        }
+    }
+
+    private static final class InvalidArguments extends RuntimeException {
+
+        private InvalidArguments(IllegalArgumentException cause) {
+            super(cause);
+        }
+    }
+}
@@ -16,6 +16,11 @@ import java.util.UUID;
  */
 public class ExamplePlugin extends JavaPlugin {
 
+    @Override
+    public void onEnable() {
+        new ExampleStatsCommand().register("meshstats");
+    }
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (command.getName().equalsIgnoreCase("meshexample") && sender instanceof Player) {
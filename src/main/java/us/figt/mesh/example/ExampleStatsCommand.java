@@ -0,0 +1,39 @@
+package us.figt.mesh.example;
+
+import org.bukkit.command.CommandSender;
+import us.figt.mesh.Mesh;
+import us.figt.mesh.command.MeshCommand;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author FigT
+ */
+public class ExampleStatsCommand extends MeshCommand<String, Integer> {
+
+    @Override
+    protected String parse(CommandSender sender, String[] args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: /meshstats <kills|deaths>");
+        }
+
+        return args[0].toLowerCase();
+    }
+
+    @Override
+    protected Mesh<Integer> fetch(CommandSender sender, String stat) {
+        // pretend to query a database which replies 10 ticks later, without holding a pool thread while waiting for it
+        return Mesh.createSupplyingAsyncDelayedMesh(() -> (sender.getName() + stat).length(), 10L);
+    }
+
+    @Override
+    protected void respond(CommandSender sender, Integer value) {
+        sender.sendMessage("Your stat: " + value);
+    }
+
+    @Override
+    protected List<String> complete(CommandSender sender, String[] previous) {
+        return previous.length == 0 ? Arrays.asList("kills", "deaths") : super.complete(sender, previous);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import us.figt.mesh.utils.PluginUtil;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default {@link MeshScheduler}, which hands every task to the {@link BukkitScheduler}.
+ * <p>
+ * Timer tasks run on a single "Mesh-Timer" thread, which is started by the first {@link #schedule(Runnable, long, TimeUnit)}
+ * (rather than by every relocated copy of Mesh which loads this class) and stopped when the plugin is disabled, dropping
+ * the timer tasks which haven't run yet. Timer tasks scheduled after that are never run.
+ *
+ * @author FigT
+ */
+public final class BukkitMeshScheduler implements MeshScheduler {
+
+    private static volatile ScheduledThreadPoolExecutor timer = null; // written while holding the class lock
+    private static boolean timerShutDown = false; // guarded by the class lock
+
+    private Thread mainThread = null;
+
+    @Override
+    public synchronized boolean isMainThread(Thread thread) {
+        if (mainThread == null && Bukkit.getServer().isPrimaryThread()) {
+            mainThread = Thread.currentThread();
+        }
+
+        return thread == mainThread;
+    }
+
+    @Override
+    public MeshTask runSync(Runnable runnable, long delay) {
+        BukkitScheduler scheduler = PluginUtil.getPlugin().getServer().getScheduler();
+
+        if (delay > 0L) {
+            return scheduler.runTaskLater(PluginUtil.getPlugin(), runnable, delay)::cancel; // has delay
+        }
+
+        return scheduler.runTask(PluginUtil.getPlugin(), runnable)::cancel;
+    }
+
+    @Override
+    public MeshTask runAsync(Runnable runnable, long delay) {
+        BukkitScheduler scheduler = PluginUtil.getPlugin().getServer().getScheduler();
+
+        if (delay > 0L) {
+            return scheduler.runTaskLaterAsynchronously(PluginUtil.getPlugin(), runnable, delay)::cancel;
+        }
+
+        return scheduler.runTaskAsynchronously(PluginUtil.getPlugin(), runnable)::cancel;
+    }
+
+    @Override
+    public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+        ScheduledThreadPoolExecutor timer = getTimer();
+
+        if (timer == null) {
+            return MeshTask.NONE; // the plugin has been disabled
+        }
+
+        ScheduledFuture<?> future;
+        try {
+            future = timer.schedule(runnable, delay, unit);
+        } catch (RejectedExecutionException e) {
+            return MeshTask.NONE; // disabled in the meantime
+        }
+
+        return () -> future.cancel(false);
+    }
+
+    /**
+     * Stops the timer thread, dropping the timer tasks which haven't run yet, and keeps a new one from being started.
+     */
+    static synchronized void shutdownTimer() {
+        timerShutDown = true;
+
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor getTimer() {
+        ScheduledThreadPoolExecutor current = timer;
+
+        if (current == null) {
+            synchronized (BukkitMeshScheduler.class) {
+                if ((current = timer) == null && !timerShutDown) {
+                    timer = current = createTimer();
+
+                    if (Bukkit.getServer() != null) { // not when running without a server
+                        Plugin plugin = PluginUtil.getPlugin();
+                        plugin.getServer().getPluginManager().registerEvents(new DisableListener(plugin), plugin);
+                    }
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Mesh-Timer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true); // don't keep cancelled tasks (and what they reference) around until their delay passes
+
+        return timer;
+    }
+
+
+    static final class DisableListener implements Listener {
+
+        private final Plugin plugin;
+
+        DisableListener(Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        // MONITOR, after everything else has had its chance to clean up, so its timer tasks don't run on a disabled plugin
+        // (nor keep the thread, and with it the plugin's class loader, alive after a reload)
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPluginDisable(PluginDisableEvent event) {
+            if (event.getPlugin() == plugin) {
+                shutdownTimer();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scheduling backend Mesh dispatches its tasks through.
+ * <p>
+ * By default this is backed by the {@link org.bukkit.scheduler.BukkitScheduler}, see {@link BukkitMeshScheduler}.
+ * Other implementations can be installed via {@link us.figt.mesh.utils.SchedulerUtil#setScheduler(MeshScheduler)}, e.g. to run Mesh without a live server.
+ *
+ * @author FigT
+ */
+public interface MeshScheduler {
+
+    /**
+     * Checks if the given thread is the main (server) thread.
+     *
+     * @param thread the thread to check
+     * @return true if the given thread is the main thread
+     */
+    boolean isMainThread(Thread thread);
+
+    /**
+     * Runs a task on the main thread.
+     *
+     * @param runnable the task to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the task
+     * @return the handle of the scheduled task
+     */
+    MeshTask runSync(Runnable runnable, long delay);
+
+    /**
+     * Runs a task off the main thread.
+     *
+     * @param runnable the task to run
+     * @param delay    the delay (<strong>in ticks</strong>) to wait to run the task
+     * @return the handle of the scheduled task
+     */
+    MeshTask runAsync(Runnable runnable, long delay);
+
+    /**
+     * Runs a task off the main thread after a delay in real time, on a timer shared by all of Mesh.
+     * <p>
+     * Timer tasks should be short, anything heavier should be handed off via {@link #runAsync(Runnable, long)}.
+     *
+     * @param runnable the task to run
+     * @param delay    the delay to wait to run the task
+     * @param unit     the unit of the delay
+     * @return the handle of the scheduled task
+     */
+    MeshTask schedule(Runnable runnable, long delay, TimeUnit unit);
+}
@@ -0,0 +1,297 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.plugin.ServicePriority;
+import org.bukkit.plugin.ServicesManager;
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * A Mesh runtime shared by every plugin on the server which shades its own (relocated) copy of Mesh.
+ * <p>
+ * One plugin {@link #provide() provides} the runtime, registering it with Bukkit's {@link ServicesManager}, and the
+ * others {@link #connect() connect} to it; all of them then dispatch their tasks through a single main thread loop, a
+ * single async worker pool and a single timer, instead of each copy running its own.
+ * <p>
+ * Since every copy of Mesh is relocated, the runtime is registered (as a {@link Map} service) and used only through
+ * JDK types: a map from the keys below to functional interfaces. Copies which can't find it, or whose provider gets
+ * disabled, fall back to their own {@link BukkitMeshScheduler}; the tasks they handed to the runtime are moved there too.
+ * When a connected plugin is disabled, its pending tasks are cancelled, and when the provider is disabled the runtime's
+ * worker pool is shut down.
+ *
+ * @author FigT
+ */
+public final class SharedMeshRuntime {
+
+    static final String VERSION_KEY = "mesh-runtime-version"; // Integer, also marks the map as a Mesh runtime
+    static final String MAIN_THREAD_KEY = "isMainThread"; // Predicate<Thread>
+    static final String RUN_SYNC_KEY = "runSync"; // BiFunction<Runnable, Long, Runnable>, delay in ticks, returns the task's canceller
+    static final String RUN_ASYNC_KEY = "runAsync"; // BiFunction<Runnable, Long, Runnable>, delay in ticks, returns the task's canceller
+    static final String SCHEDULE_KEY = "schedule"; // BiFunction<Runnable, Long, Runnable>, delay in nanoseconds, returns the task's canceller
+
+    static final int VERSION = 1;
+
+    private static final Runnable NO_OP = () -> {
+    };
+
+    private final BukkitMeshScheduler local = new BukkitMeshScheduler(); // for main thread detection and the timer
+    private final Queue<Entry> inbox = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Entry> waiting = new PriorityQueue<>(); // only touched by the loop
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadPoolExecutor workers;
+    private volatile long currentTick = 0L;
+
+    SharedMeshRuntime() {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        // shaped like the BukkitScheduler's async pool: threads are created as needed, and die after idling for a while
+        this.workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Mesh-Worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Provides the shared runtime to every plugin on the server, and starts using it. Should be called in the providing
+     * plugin's onEnable; the runtime stops along with the plugin, after which the other plugins fall back to their own
+     * scheduling.
+     *
+     * @param priority the priority of the registration, the highest priority runtime is the one connected to
+     */
+    public static void provide(ServicePriority priority) {
+        Plugin plugin = PluginUtil.getPlugin();
+        SharedMeshRuntime runtime = new SharedMeshRuntime();
+
+        plugin.getServer().getScheduler().runTaskTimer(plugin, runtime::tick, 0L, 1L);
+        plugin.getServer().getServicesManager().register(Map.class, runtime.toMap(), plugin, priority);
+        plugin.getServer().getPluginManager().registerEvents(new DisableListener(runtime, plugin), plugin);
+
+        connect();
+    }
+
+    /**
+     * Provides the shared runtime at {@link ServicePriority#Normal normal} priority.
+     *
+     * @see #provide(ServicePriority)
+     */
+    public static void provide() {
+        provide(ServicePriority.Normal);
+    }
+
+    /**
+     * Starts dispatching through the shared runtime, if one has been provided. Should be called in onEnable, after the
+     * providing plugin has been enabled (e.g. by depending on it).
+     *
+     * @return true if a shared runtime was found
+     */
+    @SuppressWarnings("rawtypes")
+    public static boolean connect() {
+        Plugin plugin = PluginUtil.getPlugin();
+        ServicesManager servicesManager = plugin.getServer().getServicesManager();
+
+        // registrations come sorted by priority, highest first
+        for (RegisteredServiceProvider<Map> registration : servicesManager.getRegistrations(Map.class)) {
+            Map<?, ?> provider = registration.getProvider();
+
+            if (provider.get(VERSION_KEY) instanceof Integer && (Integer) provider.get(VERSION_KEY) == VERSION) {
+                SharedMeshScheduler scheduler = new SharedMeshScheduler(provider, registration.getPlugin(), plugin);
+                plugin.getServer().getPluginManager().registerEvents(scheduler, plugin); // hands over or cancels its tasks on disable
+
+                SchedulerUtil.setScheduler(scheduler);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops dispatching through the shared runtime, going back to the BukkitScheduler.
+     */
+    public static void disconnect() {
+        if (isConnected()) {
+            SchedulerUtil.setScheduler(null);
+        }
+    }
+
+    /**
+     * @return if Mesh is currently dispatching through a shared runtime
+     */
+    public static boolean isConnected() {
+        return SchedulerUtil.getScheduler() instanceof SharedMeshScheduler;
+    }
+
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(VERSION_KEY, VERSION);
+        map.put(MAIN_THREAD_KEY, (Predicate<Thread>) local::isMainThread);
+        map.put(RUN_SYNC_KEY, (BiFunction<Runnable, Long, Runnable>) (runnable, delay) -> submit(runnable, delay, true));
+        map.put(RUN_ASYNC_KEY, (BiFunction<Runnable, Long, Runnable>) this::runAsync);
+        map.put(SCHEDULE_KEY, (BiFunction<Runnable, Long, Runnable>) (runnable, delay) -> local.schedule(runnable, delay, TimeUnit.NANOSECONDS)::cancel);
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private Runnable runAsync(Runnable runnable, long delay) {
+        if (delay > 0L) {
+            return submit(runnable, delay, false); // the loop hands it to the workers once its delay has passed
+        }
+
+        Entry entry = new Entry(runnable, 0L, false, 0L);
+        workers.execute(entry);
+
+        return entry::cancel;
+    }
+
+    private Runnable submit(Runnable runnable, long delay, boolean sync) {
+        // like the BukkitScheduler, a task without a delay runs on the next tick
+        Entry entry = new Entry(runnable, currentTick + Math.max(1L, delay), sync, sequence.incrementAndGet());
+        inbox.add(entry);
+
+        return entry::cancel;
+    }
+
+    /**
+     * Stops the runtime: the worker pool is shut down (letting running tasks finish), and the queued tasks are dropped.
+     * By now every connected plugin has moved its pending tasks to its own scheduler.
+     */
+    void shutdown() {
+        workers.shutdown();
+
+        for (Entry entry; (entry = inbox.poll()) != null; ) {
+            entry.cancel();
+        }
+
+        for (Entry entry : waiting) {
+            entry.cancel();
+        }
+
+        waiting.clear();
+    }
+
+    void tick() {
+        long tick = ++currentTick;
+
+        for (Entry entry; (entry = inbox.poll()) != null; ) {
+            waiting.add(entry);
+        }
+
+        while (!waiting.isEmpty() && waiting.peek().dueTick <= tick) {
+            Entry entry = waiting.poll();
+
+            if (entry.sync) {
+                entry.run();
+            } else if (entry.runnable != null) {
+                workers.execute(entry);
+            }
+        }
+    }
+
+
+    private static final class DisableListener implements Listener {
+
+        private final SharedMeshRuntime runtime;
+        private final Plugin provider;
+
+        private DisableListener(SharedMeshRuntime runtime, Plugin provider) {
+            this.runtime = runtime;
+            this.provider = provider;
+        }
+
+        // MONITOR, after the connected plugins (listening at LOWEST) have moved their tasks off the runtime
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPluginDisable(PluginDisableEvent event) {
+            if (event.getPlugin() == provider) {
+                runtime.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A task in the runtime, ordered by when it is due and then by when it was submitted.
+     */
+    private static final class Entry implements Runnable, Comparable<Entry> {
+        private volatile Runnable runnable; // cleared when cancelled, so what it captured isn't kept around until it's due
+        private final long dueTick;
+        private final boolean sync;
+        private final long sequence;
+
+        private Entry(Runnable runnable, long dueTick, boolean sync, long sequence) {
+            this.runnable = runnable;
+            this.dueTick = dueTick;
+            this.sync = sync;
+            this.sequence = sequence;
+        }
+
+        private void cancel() {
+            runnable = null;
+        }
+
+        @Override
+        public void run() {
+            Runnable runnable = this.runnable;
+            if (runnable == null) {
+                return; // cancelled
+            }
+
+            try {
+                runnable.run();
+            } catch (Throwable throwable) {
+                // one plugin's task shouldn't take down the loop (or a worker) everyone else relies on
+                PluginUtil.logException("Mesh-Runtime - A task threw an exception", throwable);
+            }
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int compare = Long.compare(dueTick, other.dueTick);
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+    }
+}
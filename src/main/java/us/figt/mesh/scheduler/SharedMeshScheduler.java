@@ -0,0 +1,231 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * The {@link MeshScheduler} of a plugin connected to a {@link SharedMeshRuntime}, which may have been provided by another
+ * (relocated) copy of Mesh.
+ * <p>
+ * The tasks handed to the runtime are tracked until they run. When the provider is disabled, the pending ones are handed
+ * to the fallback scheduler with what's left of their delay; when this plugin is disabled, they are cancelled, so the
+ * runtime doesn't keep running them (or referencing this plugin's classes).
+ *
+ * @author FigT
+ */
+final class SharedMeshScheduler implements MeshScheduler, Listener {
+
+    private static final long NANOS_PER_TICK = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private final Plugin provider;
+    private final Plugin owner; // the plugin this copy of Mesh belongs to
+    private final Predicate<Thread> isMainThread;
+    private final BiFunction<Runnable, Long, Runnable> runSync;
+    private final BiFunction<Runnable, Long, Runnable> runAsync;
+    private final BiFunction<Runnable, Long, Runnable> schedule;
+    private final MeshScheduler fallback; // once the provider is disabled
+    private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean detached = false; // the provider or the owner was disabled
+
+    SharedMeshScheduler(Map<?, ?> runtime, Plugin provider, Plugin owner) {
+        this(runtime, provider, owner, new BukkitMeshScheduler());
+    }
+
+    @SuppressWarnings("unchecked")
+    SharedMeshScheduler(Map<?, ?> runtime, Plugin provider, Plugin owner, MeshScheduler fallback) {
+        this.provider = provider;
+        this.owner = owner;
+        this.fallback = fallback;
+        this.isMainThread = (Predicate<Thread>) runtime.get(SharedMeshRuntime.MAIN_THREAD_KEY);
+        this.runSync = (BiFunction<Runnable, Long, Runnable>) runtime.get(SharedMeshRuntime.RUN_SYNC_KEY);
+        this.runAsync = (BiFunction<Runnable, Long, Runnable>) runtime.get(SharedMeshRuntime.RUN_ASYNC_KEY);
+        this.schedule = (BiFunction<Runnable, Long, Runnable>) runtime.get(SharedMeshRuntime.SCHEDULE_KEY);
+    }
+
+    @Override
+    public boolean isMainThread(Thread thread) {
+        return usesRuntime() ? isMainThread.test(thread) : fallback.isMainThread(thread);
+    }
+
+    @Override
+    public MeshTask runSync(Runnable runnable, long delay) {
+        return usesRuntime() ? submit(new Pending(runnable, Pending.SYNC, delay * NANOS_PER_TICK), runSync, delay) : fallback.runSync(runnable, delay);
+    }
+
+    @Override
+    public MeshTask runAsync(Runnable runnable, long delay) {
+        return usesRuntime() ? submit(new Pending(runnable, Pending.ASYNC, delay * NANOS_PER_TICK), runAsync, delay) : fallback.runAsync(runnable, delay);
+    }
+
+    @Override
+    public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        return usesRuntime() ? submit(new Pending(runnable, Pending.TIMER, nanos), schedule, nanos) : fallback.schedule(runnable, delay, unit);
+    }
+
+    /**
+     * @return the amount of tasks handed to the runtime which haven't run yet
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    // LOWEST, so the provider's tasks are handed over before its own listener shuts the runtime down
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPluginDisable(PluginDisableEvent event) {
+        if (event.getPlugin() == owner) {
+            detached = true;
+
+            for (Pending task : new ArrayList<>(pending)) {
+                task.cancel();
+            }
+        } else if (event.getPlugin() == provider) {
+            detached = true;
+
+            for (Pending task : new ArrayList<>(pending)) {
+                task.handOver();
+            }
+        }
+    }
+
+    private boolean usesRuntime() {
+        return !detached && provider.isEnabled();
+    }
+
+    private MeshTask submit(Pending task, BiFunction<Runnable, Long, Runnable> submitter, long delay) {
+        pending.add(task);
+
+        try {
+            task.canceller = submitter.apply(task, delay);
+        } catch (RuntimeException e) { // the runtime refused it, e.g. it is shutting down
+            task.handOver();
+            return task;
+        }
+
+        if (detached) { // disabled while we were submitting
+            task.handOver();
+        }
+
+        return task;
+    }
+
+
+    /**
+     * A task handed to the runtime, which only ever runs once: on the runtime, or on the fallback after a hand-over.
+     */
+    private final class Pending extends AtomicBoolean implements Runnable, MeshTask { // true once it ran or was cancelled
+
+        private static final int SYNC = 0;
+        private static final int ASYNC = 1;
+        private static final int TIMER = 2;
+
+        private final Runnable runnable;
+        private final int kind;
+        private final long dueAt; // in System.nanoTime
+        private volatile Runnable canceller = null; // the runtime's
+        private volatile MeshTask handedOver = null; // the fallback's
+
+        private Pending(Runnable runnable, int kind, long delayNanos) {
+            this.runnable = runnable;
+            this.kind = kind;
+            this.dueAt = System.nanoTime() + Math.max(0L, delayNanos);
+        }
+
+        @Override
+        public void run() {
+            if (compareAndSet(false, true)) {
+                pending.remove(this);
+                runnable.run();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!compareAndSet(false, true)) {
+                return;
+            }
+
+            pending.remove(this);
+
+            Runnable canceller = this.canceller;
+            if (canceller != null) {
+                canceller.run();
+            }
+
+            MeshTask handedOver = this.handedOver;
+            if (handedOver != null) {
+                handedOver.cancel();
+            }
+        }
+
+        /**
+         * Moves this task from the runtime to the fallback, with what's left of its delay.
+         */
+        private void handOver() {
+            if (get() || handedOver != null) {
+                return;
+            }
+
+            Runnable canceller = this.canceller;
+            if (canceller != null) {
+                canceller.run(); // so it doesn't run twice (it couldn't anyway, it's claimed on run)
+            }
+
+            pending.remove(this);
+
+            long remaining = Math.max(0L, dueAt - System.nanoTime());
+
+            switch (kind) {
+                case SYNC:
+                    handedOver = fallback.runSync(this, (remaining + NANOS_PER_TICK - 1) / NANOS_PER_TICK);
+                    break;
+                case ASYNC:
+                    handedOver = fallback.runAsync(this, (remaining + NANOS_PER_TICK - 1) / NANOS_PER_TICK);
+                    break;
+                default:
+                    handedOver = fallback.schedule(this, remaining, TimeUnit.NANOSECONDS);
+                    break;
+            }
+
+            if (get()) { // cancelled while we were handing it over
+                handedOver.cancel();
+            }
+        }
+    }
+}
@@ -25,12 +25,18 @@
 package us.figt.mesh.utils;
 
 import org.bukkit.plugin.java.JavaPlugin;
+import us.figt.mesh.MeshExceptionReporter;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author FigT
  */
 public final class PluginUtil {
 
+    private static final Logger FALLBACK_LOGGER = Logger.getLogger("Mesh"); // when Mesh isn't loaded by a plugin, e.g. in tests
+
     private static JavaPlugin cachedPlugin = null;
 
     private PluginUtil() {
@@ -51,8 +57,19 @@ public final class PluginUtil {
 
 
     public static void debugException(Throwable throwable) {
-        getPlugin().getLogger().warning("Mesh-Debug - Caught a " + throwable.getClass().getSimpleName());
-        throwable.printStackTrace();
+        MeshExceptionReporter.report(throwable);
+    }
+
+    public static void logException(String message, Throwable throwable) {
+        getLogger().log(Level.WARNING, message, throwable);
+    }
+
+    private static Logger getLogger() {
+        try {
+            return getPlugin().getLogger();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return FALLBACK_LOGGER; // not loaded by a PluginClassLoader
+        }
     }
 
     ;
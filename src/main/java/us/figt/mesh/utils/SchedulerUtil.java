@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.utils;
+
+import us.figt.mesh.scheduler.BukkitMeshScheduler;
+import us.figt.mesh.scheduler.MeshScheduler;
+
+/**
+ * @author FigT
+ */
+public final class SchedulerUtil {
+
+    private static volatile MeshScheduler scheduler = new BukkitMeshScheduler();
+
+    private SchedulerUtil() {
+        throw new AssertionError("Utility class cannot be instantiated"); // seal
+    }
+
+    public static MeshScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Sets the scheduler Mesh dispatches its tasks through.
+     *
+     * @param scheduler the scheduler to use, or null to go back to the BukkitScheduler
+     */
+    public static void setScheduler(MeshScheduler scheduler) {
+        SchedulerUtil.scheduler = scheduler == null ? new BukkitMeshScheduler() : scheduler;
+    }
+}
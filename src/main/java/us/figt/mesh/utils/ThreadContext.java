@@ -24,8 +24,6 @@
 
 package us.figt.mesh.utils;
 
-import org.bukkit.Bukkit;
-
 /**
  * @author FigT
  */
@@ -34,13 +32,7 @@ public enum ThreadContext {
     SYNC, ASYNC;
 
 
-    private static Thread mainThread = null;
-
-    public static synchronized ThreadContext getThreadContext(Thread thread) {
-        if (mainThread == null && Bukkit.getServer().isPrimaryThread()) {
-            mainThread = Thread.currentThread();
-        }
-
-        return thread == mainThread ? SYNC : ASYNC;
+    public static ThreadContext getThreadContext(Thread thread) {
+        return SchedulerUtil.getScheduler().isMainThread(thread) ? SYNC : ASYNC;
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class BulkheadTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void cancellingAQueuedCallFreesItsPlace() {
+        Bulkhead bulkhead = Bulkhead.register("cancel-queued", 1, 1);
+        AtomicInteger made = new AtomicInteger();
+
+        Mesh<String> running = Mesh.createMesh();
+        bulkhead.call(() -> running);
+
+        Mesh<String> waiting = bulkhead.call(() -> {
+            made.incrementAndGet();
+            return Mesh.createCompletedMesh("cancelled");
+        });
+        assertEquals(1, bulkhead.getQueued());
+
+        waiting.cancel();
+        assertEquals(0, bulkhead.getQueued());
+
+        Mesh<String> next = bulkhead.call(() -> Mesh.createCompletedMesh("next")); // not rejected, the queue has room again
+        assertEquals(1, bulkhead.getQueued());
+        assertEquals(0L, bulkhead.getRejectedCount());
+
+        running.complete("done");
+        assertEquals("next", next.getCompletableFuture().join());
+        assertEquals(0, made.get());
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    public void completingAStartedCallReleasesItsSlot() {
+        Bulkhead bulkhead = Bulkhead.register("release", 1, 1);
+
+        Mesh<String> first = Mesh.createMesh();
+        Mesh<String> outer = bulkhead.call(() -> first);
+        Mesh<String> second = bulkhead.call(() -> Mesh.createCompletedMesh("second"));
+        assertFalse(second.getCompletableFuture().isDone());
+
+        first.complete("first");
+        assertEquals("first", outer.getCompletableFuture().join());
+        assertTrue(second.getCompletableFuture().isDone());
+        assertEquals(2L, bulkhead.getStartedCount());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    public void cancellingAStartedCallFreesItsSlotRightAway() {
+        Bulkhead bulkhead = Bulkhead.register("cancel-started", 1, 1);
+
+        Mesh<String> running = Mesh.createMesh();
+        Mesh<String> outer = bulkhead.call(() -> running);
+        Mesh<String> next = bulkhead.call(() -> Mesh.createCompletedMesh("next"));
+
+        assertTrue(outer.cancel());
+
+        assertTrue(running.isCancelled());
+        assertEquals("next", next.getCompletableFuture().join()); // even if the cancelled call's work were still running
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    public void drainingCallsWhichCompleteRightAwayDoesNotRecurse() throws InterruptedException {
+        Bulkhead bulkhead = Bulkhead.register("drain-loop", 1, 100_000);
+        AtomicInteger made = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Mesh<String> running = Mesh.createMesh();
+        bulkhead.call(() -> running);
+
+        for (int i = 0; i < 100_000; i++) {
+            bulkhead.call(() -> Mesh.createCompletedMesh("call " + made.incrementAndGet()));
+        }
+
+        Thread releaser = new Thread(null, () -> {
+            try {
+                running.complete("done"); // starts every waiting call from here
+            } catch (Throwable throwable) {
+                failure.set(throwable);
+            }
+        }, "small-stack-releaser", 256 * 1024);
+
+        releaser.start();
+        releaser.join();
+
+        assertNull(failure.get());
+        assertEquals(100_000, made.get());
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(0, bulkhead.getActive());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class CircuitBreakerTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void opensAfterTheThresholdOfConsecutiveFailures() {
+        CircuitBreaker breaker = CircuitBreaker.register("threshold", 3, 1L, TimeUnit.MINUTES);
+        AtomicInteger calls = new AtomicInteger();
+
+        breaker.protect(CircuitBreakerTest::failed);
+        breaker.protect(CircuitBreakerTest::failed);
+        breaker.protect(() -> Mesh.createCompletedMesh("up")); // resets the consecutive failures
+        breaker.protect(CircuitBreakerTest::failed);
+        breaker.protect(CircuitBreakerTest::failed);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.protect(CircuitBreakerTest::failed);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1L, breaker.getOpenedCount());
+
+        Mesh<String> rejected = breaker.protect(() -> {
+            calls.incrementAndGet();
+            return Mesh.createCompletedMesh("up");
+        });
+
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        rejected.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+
+        assertTrue(seen.get() instanceof CircuitOpenException);
+        assertEquals(0, calls.get()); // not made while open
+        assertEquals(1L, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void nullCallCountsAsAFailedTrial() {
+        CircuitBreaker breaker = CircuitBreaker.register("null-trial", 1, 0L, TimeUnit.NANOSECONDS);
+
+        breaker.protect(CircuitBreakerTest::failed);
+
+        assertThrows(NullPointerException.class, () -> breaker.protect(() -> null)); // like any other failure of the call itself
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState()); // rather than stuck half-open
+        assertEquals(2L, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void lateSuccessDoesNotCloseTheHalfOpenBreaker() {
+        CircuitBreaker breaker = CircuitBreaker.register("late-success", 1, 0L, TimeUnit.NANOSECONDS);
+        Mesh<String> late = breaker.protect(Mesh::createMesh); // admitted while closed
+
+        breaker.protect(CircuitBreakerTest::failed);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Mesh<String> trial = breaker.protect(Mesh::createMesh);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        late.complete("late");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState()); // only the trial decides
+
+        trial.completeExceptionally(new IllegalStateException("still down"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void lateFailureDoesNotReopenTheHalfOpenBreaker() {
+        CircuitBreaker breaker = CircuitBreaker.register("late-failure", 1, 0L, TimeUnit.NANOSECONDS);
+        Mesh<String> late = breaker.protect(Mesh::createMesh);
+
+        breaker.protect(CircuitBreakerTest::failed);
+        Mesh<String> trial = breaker.protect(Mesh::createMesh);
+
+        late.completeExceptionally(new IllegalStateException("late"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        trial.complete("up");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1L, breaker.getOpenedCount());
+        assertEquals(2L, breaker.getFailureCount()); // the late failure is still counted
+    }
+
+    @Test
+    public void onlyTheTrialCallIsLetThroughWhileHalfOpen() {
+        CircuitBreaker breaker = CircuitBreaker.register("single-trial", 1, 0L, TimeUnit.NANOSECONDS);
+
+        breaker.protect(CircuitBreakerTest::failed);
+        Mesh<String> trial = breaker.protect(Mesh::createMesh);
+        Mesh<String> rejected = breaker.protect(Mesh::createMesh);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(1L, breaker.getRejectedCount());
+        assertEquals(true, rejected.getCompletableFuture().isCompletedExceptionally());
+
+        trial.cancel();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState()); // the next call tries again
+        assertEquals(1L, breaker.getOpenedCount());
+    }
+
+    private static Mesh<String> failed() {
+        Mesh<String> mesh = Mesh.createMesh();
+        mesh.completeExceptionally(new IllegalStateException("down"));
+
+        return mesh;
+    }
+}
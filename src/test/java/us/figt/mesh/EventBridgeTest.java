@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class EventBridgeTest {
+
+    private static final Function<KeyedEvent, Object> KEY = event -> event.key;
+
+    private VirtualTickScheduler scheduler;
+    private EventBridge<KeyedEvent> bridge;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+        bridge = EventBridge.replaceUnregistered(KeyedEvent.class);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void dispatchCompletesEveryWaiterWithoutAKey() {
+        Mesh<KeyedEvent> first = Mesh.awaitEvent(KeyedEvent.class, null, 0L, TimeUnit.SECONDS);
+        Mesh<KeyedEvent> second = Mesh.awaitEvent(KeyedEvent.class, null, 0L, TimeUnit.SECONDS);
+        KeyedEvent event = new KeyedEvent("a");
+
+        bridge.dispatch(event);
+
+        assertSame(event, first.getCompletableFuture().getNow(null));
+        assertSame(event, second.getCompletableFuture().getNow(null));
+        assertEquals(0, bridge.getKeyFunctionCount());
+    }
+
+    @Test
+    public void waitersOnlySeeEventsOnTheirKeyWhichPassThePredicate() {
+        Mesh<KeyedEvent> onA = Mesh.awaitEvent(KeyedEvent.class, KEY, "a", event -> event.accepted, 0L, TimeUnit.SECONDS);
+        Mesh<KeyedEvent> onB = Mesh.awaitEvent(KeyedEvent.class, KEY, "b", null, 0L, TimeUnit.SECONDS);
+
+        bridge.dispatch(new KeyedEvent("c"));
+        bridge.dispatch(new KeyedEvent("a", false));
+        assertFalse(onA.getCompletableFuture().isDone());
+        assertFalse(onB.getCompletableFuture().isDone());
+
+        KeyedEvent event = new KeyedEvent("a");
+        bridge.dispatch(event);
+        assertSame(event, onA.getCompletableFuture().getNow(null));
+        assertFalse(onB.getCompletableFuture().isDone());
+        assertEquals(1, bridge.getKeyFunctionCount()); // still waited on by b
+
+        assertTrue(onB.cancel());
+        assertEquals(0, bridge.getKeyFunctionCount());
+    }
+
+    @Test
+    public void failingPredicateFailsTheWaiter() {
+        IllegalStateException failure = new IllegalStateException("expected by the test");
+        Mesh<KeyedEvent> mesh = Mesh.awaitEvent(KeyedEvent.class, event -> {
+            throw failure;
+        }, 0L, TimeUnit.SECONDS);
+
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+        bridge.dispatch(new KeyedEvent("a"));
+
+        assertSame(failure, seen.get());
+    }
+
+    @Test
+    public void timeoutFailsAndRemovesTheWaiter() {
+        Mesh<KeyedEvent> mesh = Mesh.awaitEvent(KeyedEvent.class, KEY, "a", null, 50L, TimeUnit.MILLISECONDS);
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+
+        scheduler.tick(2L);
+
+        assertTrue(seen.get() instanceof TimeoutException);
+        assertEquals(0, bridge.getKeyFunctionCount());
+
+        bridge.dispatch(new KeyedEvent("a")); // nothing left to complete
+    }
+
+    @Test
+    public void keyFunctionsWhichArentSharedDontPileUp() {
+        for (int i = 0; i < 100; i++) {
+            String prefix = "key";
+            Mesh.awaitEvent(KeyedEvent.class, event -> prefix + event.key, "key" + i, null, 0L, TimeUnit.SECONDS);
+        }
+
+        assertEquals(100, bridge.getKeyFunctionCount());
+
+        for (int i = 0; i < 100; i++) {
+            bridge.dispatch(new KeyedEvent(String.valueOf(i)));
+        }
+
+        assertEquals(0, bridge.getKeyFunctionCount());
+    }
+
+
+    private static final class KeyedEvent extends Event {
+
+        private static final HandlerList handlers = new HandlerList();
+
+        private final String key;
+        private final boolean accepted;
+
+        private KeyedEvent(String key) {
+            this(key, true);
+        }
+
+        private KeyedEvent(String key, boolean accepted) {
+            this.key = key;
+            this.accepted = accepted;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+}
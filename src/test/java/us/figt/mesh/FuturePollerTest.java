@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class FuturePollerTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void plainFutureCompletesItsMeshOnceDone() {
+        FutureTask<String> future = new FutureTask<>(() -> "done");
+        Mesh<String> mesh = Mesh.fromFuture(future);
+
+        scheduler.tick(3L);
+        assertFalse(mesh.toCompletableFuture().isDone());
+        assertEquals(1, FuturePoller.getWatchedCount());
+
+        future.run();
+        scheduler.runUntilIdle(100L);
+
+        assertTrue(mesh.toCompletableFuture().isDone());
+        assertEquals("done", mesh.toCompletableFuture().join());
+        assertEquals(0, FuturePoller.getWatchedCount());
+    }
+
+    @Test
+    public void cancelledMeshStopsBeingWatched() {
+        FutureTask<String> future = new FutureTask<>(() -> "never");
+        Mesh<String> mesh = Mesh.fromFuture(future);
+
+        scheduler.tick();
+        mesh.cancel();
+        scheduler.runUntilIdle(100L);
+
+        assertEquals(0, FuturePoller.getWatchedCount());
+    }
+
+    @Test
+    public void rejectedHandOffStillCompletesTheMesh() throws Exception {
+        Rejecting rejecting = new Rejecting(scheduler);
+        SchedulerUtil.setScheduler(rejecting);
+
+        FutureTask<String> future = new FutureTask<>(() -> "done");
+        Mesh<String> mesh = Mesh.fromFuture(future);
+        scheduler.tick();
+
+        future.run();
+        rejecting.rejectAsync = true; // e.g. the plugin is being disabled
+        scheduler.runUntilIdle(100L);
+
+        assertEquals("done", mesh.toCompletableFuture().get(5L, TimeUnit.SECONDS));
+        assertEquals(0, FuturePoller.getWatchedCount());
+    }
+
+    @Test
+    public void pollingResumesAfterAFailedReschedule() throws Exception {
+        Rejecting rejecting = new Rejecting(scheduler);
+        SchedulerUtil.setScheduler(rejecting);
+
+        FutureTask<String> first = new FutureTask<>(() -> "first");
+        Mesh<String> firstMesh = Mesh.fromFuture(first);
+
+        rejecting.rejectTimer = true;
+        scheduler.runUntilIdle(100L); // the first poll can't schedule the next one
+        rejecting.rejectTimer = false;
+
+        FutureTask<String> second = new FutureTask<>(() -> "second");
+        Mesh<String> secondMesh = Mesh.fromFuture(second);
+        first.run();
+        second.run();
+        scheduler.runUntilIdle(100L);
+
+        assertEquals("first", firstMesh.toCompletableFuture().get(5L, TimeUnit.SECONDS));
+        assertEquals("second", secondMesh.toCompletableFuture().get(5L, TimeUnit.SECONDS));
+        assertEquals(0, FuturePoller.getWatchedCount());
+    }
+
+
+    /**
+     * Delegates to the virtual scheduler, but can reject async and timer tasks like a disabled plugin's scheduler would.
+     */
+    private static final class Rejecting implements MeshScheduler {
+
+        private final VirtualTickScheduler delegate;
+        private volatile boolean rejectAsync = false;
+        private volatile boolean rejectTimer = false;
+
+        private Rejecting(VirtualTickScheduler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isMainThread(Thread thread) {
+            return delegate.isMainThread(thread);
+        }
+
+        @Override
+        public MeshTask runSync(Runnable runnable, long delay) {
+            return delegate.runSync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask runAsync(Runnable runnable, long delay) {
+            if (rejectAsync) {
+                throw new IllegalStateException("expected by the test");
+            }
+
+            return delegate.runAsync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+            if (rejectTimer) {
+                throw new IllegalStateException("expected by the test");
+            }
+
+            return delegate.schedule(runnable, delay, unit);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class LatencyTrackerTest {
+
+    @Test
+    public void noPercentileUntilEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(10, 3);
+
+        tracker.record(5L, TimeUnit.MILLISECONDS);
+        tracker.record(5L, TimeUnit.MILLISECONDS);
+        assertEquals(-1L, tracker.percentile(0.5D, TimeUnit.MILLISECONDS));
+
+        tracker.record(5L, TimeUnit.MILLISECONDS);
+        assertEquals(5L, tracker.percentile(0.5D, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void percentileIsTheNearestRank() {
+        LatencyTracker tracker = new LatencyTracker(100, 1);
+
+        for (int i = 100; i >= 1; i--) {
+            tracker.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(1L, tracker.percentile(0D, TimeUnit.MILLISECONDS));
+        assertEquals(50L, tracker.percentile(0.5D, TimeUnit.MILLISECONDS));
+        assertEquals(95L, tracker.percentile(0.95D, TimeUnit.MILLISECONDS));
+        assertEquals(100L, tracker.percentile(1D, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void onlyTheMostRecentSamplesAreKept() {
+        LatencyTracker tracker = new LatencyTracker(4, 1);
+
+        for (int i = 0; i < 4; i++) {
+            tracker.record(1L, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            tracker.record(10L, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(10L, tracker.percentile(1D, TimeUnit.MILLISECONDS));
+        assertEquals(8L, tracker.getCount());
+    }
+
+    @Test
+    public void percentilesNeverSeeUnwrittenSamples() throws InterruptedException {
+        for (int round = 0; round < 2_000; round++) {
+            LatencyTracker tracker = new LatencyTracker(64, 1);
+            CountDownLatch done = new CountDownLatch(1);
+
+            Thread recorder = new Thread(() -> {
+                for (int i = 0; i < 64; i++) {
+                    tracker.record(5L, TimeUnit.MILLISECONDS);
+                }
+
+                done.countDown();
+            });
+            recorder.start();
+
+            double percentile = 0D;
+            while (done.getCount() > 0L) {
+                long value = tracker.percentile(percentile, TimeUnit.MILLISECONDS);
+                assertTrue("saw " + value, value == -1L || value == 5L);
+                percentile = percentile == 0D ? 0.001D : 0D; // a different percentile isn't cached
+            }
+
+            recorder.join();
+        }
+    }
+
+    @Test
+    public void percentileMustBeBetweenZeroAndOne() {
+        LatencyTracker tracker = new LatencyTracker();
+
+        assertThrows(IllegalArgumentException.class, () -> tracker.percentile(1.5D, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class LazyMeshTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void nothingRunsUntilStarted() {
+        AtomicInteger supplied = new AtomicInteger();
+        LazyMesh<Integer> lazy = LazyMesh.supplyAsync(supplied::incrementAndGet).applySync(value -> value * 2);
+
+        scheduler.runUntilIdle(10L);
+        assertEquals(0, supplied.get());
+        assertFalse(lazy.isStarted());
+
+        Mesh<Integer> started = lazy.start();
+        scheduler.runUntilIdle(10L);
+
+        assertEquals(1, supplied.get());
+        assertEquals(2, (int) started.getCompletableFuture().join());
+    }
+
+    @Test
+    public void branchingIsRejected() {
+        LazyMesh<String> root = LazyMesh.supplyAsync(() -> "value");
+        LazyMesh<Integer> length = root.applyAsync(String::length);
+
+        assertThrows(IllegalStateException.class, () -> root.applyAsync(String::isEmpty));
+        assertThrows(IllegalStateException.class, root::start);
+
+        Mesh<Integer> started = length.applySync(value -> value + 1).start(); // the chain itself is unaffected
+        scheduler.runUntilIdle(10L);
+
+        assertEquals(6, (int) started.getCompletableFuture().join());
+    }
+
+    @Test
+    public void stagesCannotBeRecordedOnceStarted() {
+        LazyMesh<String> lazy = LazyMesh.supplySync(() -> "value");
+        Mesh<String> started = lazy.start();
+
+        assertTrue(lazy.isStarted());
+        assertEquals(started, lazy.start());
+        assertThrows(IllegalStateException.class, () -> lazy.applyAsync(String::length));
+    }
+
+    @Test
+    public void consecutiveStagesInOneContextShareADispatch() {
+        CountingScheduler counting = new CountingScheduler(scheduler);
+        SchedulerUtil.setScheduler(counting);
+
+        AtomicReference<String> accepted = new AtomicReference<>();
+        Mesh<Void> started = LazyMesh.supplyAsync(() -> "value")
+                .applyAsync(String::length)
+                .applySync(length -> "length " + length)
+                .acceptSync(accepted::set);
+
+        scheduler.runUntilIdle(10L);
+
+        started.getCompletableFuture().join();
+        assertEquals("length 5", accepted.get());
+        assertEquals(1, counting.async.get()); // the supplier and applyAsync
+        assertEquals(1, counting.sync.get()); // applySync and acceptSync
+    }
+
+    private static final class CountingScheduler implements MeshScheduler {
+
+        private final VirtualTickScheduler delegate;
+        private final AtomicInteger sync = new AtomicInteger();
+        private final AtomicInteger async = new AtomicInteger();
+
+        private CountingScheduler(VirtualTickScheduler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isMainThread(Thread thread) {
+            return delegate.isMainThread(thread);
+        }
+
+        @Override
+        public MeshTask runSync(Runnable runnable, long delay) {
+            sync.incrementAndGet();
+            return delegate.runSync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask runAsync(Runnable runnable, long delay) {
+            async.incrementAndGet();
+            return delegate.runAsync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+            return delegate.schedule(runnable, delay, unit);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshCompletionStageTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void completableFutureIsAReadOnlyViewOfTheMesh() {
+        Mesh<String> mesh = Mesh.createMesh();
+        CompletableFuture<String> view = mesh.toCompletableFuture();
+
+        assertSame(view, mesh.toCompletableFuture()); // no copy per call
+        assertThrows(UnsupportedOperationException.class, () -> view.complete("outside"));
+        assertThrows(UnsupportedOperationException.class, () -> view.completeExceptionally(new IllegalStateException()));
+        assertThrows(UnsupportedOperationException.class, () -> view.cancel(false));
+        assertThrows(UnsupportedOperationException.class, () -> view.obtrudeValue("outside"));
+        assertThrows(UnsupportedOperationException.class, () -> view.obtrudeException(new IllegalStateException()));
+        assertFalse(view.isDone());
+
+        mesh.complete("value");
+        assertEquals("value", view.join());
+        assertThrows(UnsupportedOperationException.class, () -> view.obtrudeValue("outside"));
+        assertEquals("value", view.join());
+    }
+
+    @Test
+    public void viewTurnsBackIntoItsMesh() {
+        Mesh<String> mesh = Mesh.createMesh();
+        assertSame(mesh, Mesh.fromStage(mesh.toCompletableFuture()));
+    }
+
+    @Test
+    public void plainStagesRunOnTheCompletingThread() {
+        Mesh<String> mesh = Mesh.createMesh();
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        Mesh<Integer> length = mesh.thenApply(value -> {
+            ranOn.set(Thread.currentThread());
+            return value.length();
+        });
+        Mesh<Integer> doubled = length.thenCompose(value -> CompletableFuture.completedFuture(value * 2));
+        Mesh<String> combined = doubled.thenCombine(length, (a, b) -> a + "/" + b);
+
+        mesh.complete("value");
+
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(5, (int) length.toCompletableFuture().join());
+        assertEquals("10/5", combined.toCompletableFuture().join());
+    }
+
+    @Test
+    public void asyncStagesRunThroughTheScheduler() {
+        Mesh<String> mesh = Mesh.createCompletedMesh("value");
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        Mesh<Integer> length = mesh.thenApplyAsync(value -> {
+            ranOn.set(Thread.currentThread());
+            return value.length();
+        });
+        assertFalse(length.toCompletableFuture().isDone());
+
+        scheduler.runUntilIdle(10L);
+
+        assertEquals(5, (int) length.toCompletableFuture().join());
+        assertFalse(scheduler.isMainThread(ranOn.get()));
+
+        Mesh<Integer> direct = mesh.thenApplyAsync(String::length, Runnable::run); // an explicit executor is used as-is
+        assertEquals(5, (int) direct.toCompletableFuture().join());
+    }
+
+    @Test
+    public void failuresPassThroughToTheRecoveringStages() {
+        Mesh<String> mesh = Mesh.createMesh();
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+
+        Mesh<Integer> length = mesh.thenApply(String::length);
+        Mesh<Integer> observed = length.whenComplete((value, throwable) -> seen.set(throwable));
+        Mesh<Integer> recovered = observed.exceptionally(throwable -> -1);
+        Mesh<String> handled = length.handle((value, throwable) -> throwable == null ? "ok" : "failed");
+
+        IllegalStateException failure = new IllegalStateException("expected by the test");
+        mesh.completeExceptionally(failure);
+
+        assertTrue(length.toCompletableFuture().isCompletedExceptionally());
+        CompletionException thrown = assertThrows(CompletionException.class, () -> observed.toCompletableFuture().join());
+        assertSame(failure, thrown.getCause());
+        assertSame(failure, seen.get()); // stages get the cause itself, unwrapped
+        assertEquals(-1, (int) recovered.toCompletableFuture().join());
+        assertEquals("failed", handled.toCompletableFuture().join());
+    }
+
+    @Test
+    public void eitherStageTakesTheFirstValue() {
+        Mesh<String> first = Mesh.createMesh();
+        Mesh<String> second = Mesh.createMesh();
+
+        Mesh<Integer> either = first.applyToEither(second, String::length);
+        second.complete("second");
+        first.complete("first");
+
+        assertEquals(6, (int) either.toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author FigT
+ */
+public class MeshExceptionReporterTest {
+
+    private VirtualTickScheduler scheduler;
+    private final List<Throwable> reported = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        MeshExceptionReporter.reset();
+        MeshExceptionReporter.setRateLimit(100, 10L, TimeUnit.SECONDS);
+        MeshExceptionReporter.setSink((message, throwable) -> reported.add(throwable));
+    }
+
+    @After
+    public void tearDown() {
+        MeshExceptionReporter.setSink(null);
+        MeshExceptionReporter.setRateLimit(1, 10L, TimeUnit.SECONDS);
+        MeshExceptionReporter.reset();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void exceptionIsReportedOnce() {
+        IllegalStateException exception = new IllegalStateException("expected by the test");
+
+        MeshExceptionReporter.report(exception);
+        MeshExceptionReporter.report(new CompletionException(exception)); // the same exception, wrapped by a later stage
+        scheduler.tick();
+
+        assertEquals(1, reported.size());
+        assertSame(exception, reported.get(0));
+    }
+
+    @Test
+    public void brokenSinkIsCountedAndDoesNotStopReporting() {
+        MeshExceptionReporter.setSink((message, throwable) -> {
+            reported.add(throwable);
+            throw new IllegalStateException("expected by the test");
+        });
+
+        MeshExceptionReporter.report(new IllegalArgumentException("first"));
+        MeshExceptionReporter.report(new IllegalArgumentException("second"));
+        scheduler.tick();
+
+        assertEquals(2, reported.size());
+        assertEquals(2L, MeshExceptionReporter.getFailedCount());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * @author FigT
+ */
+public class MeshJoinSyncTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void delayedSyncStageThrowsRightAway() {
+        Mesh<String> mesh = Mesh.createSupplyingSyncDelayedMesh(() -> "value", 5L);
+
+        assertThrows(MeshDeadlockException.class, () -> mesh.joinSync(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void delayedSyncStageUpstreamThrowsRightAway() {
+        Mesh<Integer> mesh = Mesh.createSupplyingSyncDelayedMesh(() -> "value", 5L)
+                .applyAsync(String::length)
+                .applySync(length -> length * 2);
+
+        assertThrows(MeshDeadlockException.class, () -> mesh.joinSync(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void completedUpstreamIsNotFollowed() throws TimeoutException {
+        Mesh<String> source = Mesh.createSupplyingSyncDelayedMesh(() -> "value", 1L);
+        Mesh<Integer> mesh = source.applySync(String::length);
+
+        scheduler.tick();
+        assertEquals(Integer.valueOf(5), mesh.joinSync(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void waitingMainThreadRunsQueuedSyncStages() throws Exception {
+        Mesh<String> source = Mesh.createMesh();
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        Mesh<Integer> mesh = source.applySync(value -> {
+            ranOn.set(Thread.currentThread());
+            return value.length();
+        });
+
+        Thread completer = new Thread(() -> source.complete("value")); // queues the SYNC stage from off the main thread
+        completer.start();
+
+        assertEquals(Integer.valueOf(5), mesh.joinSync(10L, TimeUnit.SECONDS));
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(0L, scheduler.getCurrentTick()); // no tick was needed
+
+        completer.join();
+        scheduler.tick(); // the drain task, which has nothing left to run
+    }
+
+    @Test
+    public void rejectedDrainIsScheduledAgainByTheNextSubmit() {
+        AtomicInteger ran = new AtomicInteger();
+        SchedulerUtil.setScheduler(new RejectingSync(scheduler));
+
+        assertThrows(IllegalStateException.class, () -> SyncQueue.submit(ran::incrementAndGet));
+
+        SchedulerUtil.setScheduler(scheduler);
+        SyncQueue.submit(ran::incrementAndGet);
+        scheduler.tick();
+
+        assertEquals(1, ran.get()); // the rejected task was dropped, the next one drained
+    }
+
+    @Test
+    public void meshWhichNeverCompletesTimesOut() {
+        Mesh<String> mesh = Mesh.createMesh();
+
+        assertThrows(TimeoutException.class, () -> mesh.joinSync(20L, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Delegates to the virtual scheduler, but rejects sync tasks like a disabled plugin's scheduler would.
+     */
+    private static final class RejectingSync implements MeshScheduler {
+
+        private final VirtualTickScheduler delegate;
+
+        private RejectingSync(VirtualTickScheduler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isMainThread(Thread thread) {
+            return delegate.isMainThread(thread);
+        }
+
+        @Override
+        public MeshTask runSync(Runnable runnable, long delay) {
+            throw new IllegalStateException("expected by the test");
+        }
+
+        @Override
+        public MeshTask runAsync(Runnable runnable, long delay) {
+            return delegate.runAsync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+            return delegate.schedule(runnable, delay, unit);
+        }
+    }
+}
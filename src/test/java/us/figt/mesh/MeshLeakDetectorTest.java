@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshLeakDetectorTest {
+
+    private VirtualTickScheduler scheduler;
+    private final List<MeshLeakDetector.Leak> leaks = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+
+        MeshLeakDetector.setReporter(leaks::add);
+        MeshLeakDetector.enable(1, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        MeshLeakDetector.disable();
+        MeshLeakDetector.setReporter(null);
+        scheduler.tick(20L); // let the last sweep see it was disabled
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void stalledMeshIsReportedOnce() {
+        Mesh<String> mesh = Mesh.createMesh();
+        scheduler.tick(30L);
+
+        assertEquals(1, leaks.size());
+        assertEquals(MeshLeakDetector.Leak.Kind.STALLED, leaks.get(0).getKind());
+        assertFalse(mesh.toCompletableFuture().isDone()); // also keeps the Mesh reachable until here
+    }
+
+    @Test
+    public void completedMeshIsNotReported() {
+        Mesh<String> mesh = Mesh.createMesh();
+        mesh.complete("done");
+        scheduler.tick(30L);
+
+        assertTrue(leaks.isEmpty());
+        assertEquals(0, MeshLeakDetector.getTrackedCount());
+    }
+
+    @Test
+    public void brokenReporterDoesNotStopTheSweeps() {
+        MeshLeakDetector.setReporter(leak -> {
+            leaks.add(leak);
+            throw new IllegalStateException("expected by the test");
+        });
+
+        Mesh<String> first = Mesh.createMesh();
+        scheduler.tick(30L);
+        Mesh<String> second = Mesh.createMesh();
+        scheduler.tick(30L);
+
+        assertEquals(2, leaks.size());
+        assertFalse(first.toCompletableFuture().isDone() || second.toCompletableFuture().isDone());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshPipelineTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void cancellingTheResultDropsTheScheduledStep() {
+        AtomicBoolean ran = new AtomicBoolean(false);
+
+        MeshPipeline<String, Void> pipeline = MeshPipeline.<String>builder()
+                .applyAsync(String::length)
+                .acceptSyncDelayed(length -> ran.set(true), 20L)
+                .build();
+
+        Mesh<Void> result = pipeline.run("input");
+        scheduler.tick(2L); // the async step ran, the sync step is scheduled
+
+        assertFalse(scheduler.isIdle());
+        result.cancel();
+
+        assertTrue(scheduler.isIdle());
+        scheduler.tick(30L);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void delayedExceptionallyRunsAfterItsDelay() {
+        MeshPipeline<String, String> pipeline = MeshPipeline.<String>builder()
+                .<String>applySync(input -> {
+                    throw new IllegalStateException("expected by the test");
+                })
+                .exceptionallySyncDelayed(throwable -> "recovered", 5L)
+                .build();
+
+        Mesh<String> result = pipeline.run("input");
+
+        scheduler.tick(4L);
+        assertFalse(result.toCompletableFuture().isDone());
+
+        scheduler.tick();
+        assertEquals("recovered", result.toCompletableFuture().join());
+    }
+
+    @Test
+    public void delayedComposeRunsAfterItsDelay() {
+        MeshPipeline<String, Integer> pipeline = MeshPipeline.<String>builder()
+                .composeAsyncDelayed(input -> Mesh.createCompletedMesh(input.length()), 3L)
+                .build();
+
+        Mesh<Integer> result = pipeline.run("input");
+
+        scheduler.tick(2L);
+        assertFalse(result.toCompletableFuture().isDone());
+
+        scheduler.tick();
+        assertEquals(Integer.valueOf(5), result.toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshRaceTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void firstSuccessWinsAndTheLosersAreCancelled() {
+        Mesh<String> slow = Mesh.createMesh();
+        Mesh<String> fast = Mesh.createMesh();
+        Mesh<String> race = Mesh.race(slow, fast);
+
+        fast.complete("fast");
+
+        assertEquals("fast", race.getCompletableFuture().getNow(null));
+        assertTrue(slow.isCancelled());
+        assertFalse(fast.isCancelled());
+    }
+
+    @Test
+    public void failureDoesNotDecideWhileOthersArePending() {
+        Mesh<String> failing = Mesh.createMesh();
+        Mesh<String> succeeding = Mesh.createMesh();
+        Mesh<String> race = Mesh.race(failing, succeeding);
+
+        failing.completeExceptionally(new IllegalStateException("expected by the test"));
+        assertFalse(race.getCompletableFuture().isDone());
+
+        succeeding.complete("value");
+        assertEquals("value", race.getCompletableFuture().getNow(null));
+    }
+
+    @Test
+    public void raceFailsWithTheLastFailureOnceEveryContestantFailed() {
+        Mesh<String> first = Mesh.createMesh();
+        Mesh<String> second = Mesh.createMesh();
+        Mesh<String> race = Mesh.race(first, second);
+        IllegalStateException last = new IllegalStateException("last");
+
+        first.completeExceptionally(new IllegalStateException("first"));
+        second.completeExceptionally(last);
+
+        assertSame(last, failureOf(race));
+    }
+
+    @Test
+    public void cancellingTheRaceCancelsTheContestants() {
+        Mesh<String> first = Mesh.createMesh();
+        Mesh<String> second = Mesh.createMesh();
+
+        assertTrue(Mesh.race(first, second).cancel());
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    public void fastAttemptIsNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+        Mesh<Integer> mesh = Mesh.hedge(calls::incrementAndGet, 100L, TimeUnit.MILLISECONDS);
+
+        scheduler.tick();
+        assertEquals(Integer.valueOf(1), mesh.getCompletableFuture().getNow(null));
+
+        scheduler.tick(5L);
+        assertEquals(1, calls.get());
+        assertTrue(scheduler.isIdle()); // the hedge timer was cancelled
+    }
+
+    @Test
+    public void failedAttemptIsHedgedRightAway() {
+        AtomicInteger calls = new AtomicInteger();
+        Mesh<String> mesh = Mesh.hedge(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("expected by the test");
+            }
+
+            return "hedged";
+        }, 10L, TimeUnit.SECONDS);
+
+        scheduler.tick();
+
+        assertEquals("hedged", mesh.getCompletableFuture().getNow(null));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void slowAttemptIsHedgedAfterTheDelay() throws InterruptedException {
+        scheduler.shutdown();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        scheduler = VirtualTickScheduler.concurrent(executor).install();
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            Mesh<String> mesh = Mesh.hedge(() -> {
+                if (calls.incrementAndGet() == 1) {
+                    awaitQuietly(release); // the slow first attempt
+                    return "first";
+                }
+
+                return "hedged";
+            }, 100L, TimeUnit.MILLISECONDS); // two ticks
+
+            scheduler.tick();
+            Thread.sleep(50L);
+            assertEquals(1, calls.get());
+
+            scheduler.tick();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (!mesh.getCompletableFuture().isDone() && System.nanoTime() < deadline) {
+                Thread.sleep(1L);
+            }
+
+            assertEquals("hedged", mesh.getCompletableFuture().getNow(null));
+            assertEquals(2, calls.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void trackerWithoutEnoughSamplesDoesNotHedge() {
+        AtomicInteger calls = new AtomicInteger();
+        LatencyTracker tracker = new LatencyTracker(10, 5);
+        IllegalStateException failure = new IllegalStateException("expected by the test");
+
+        Mesh<String> mesh = Mesh.hedge(() -> {
+            calls.incrementAndGet();
+            throw failure;
+        }, tracker, 0.95D);
+
+        scheduler.tick(5L);
+
+        assertSame(failure, failureOf(mesh));
+        assertEquals(1, calls.get());
+        assertEquals(1L, tracker.getCount()); // the failed attempt's latency is recorded too
+    }
+
+    private static Throwable failureOf(Mesh<?> mesh) {
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+
+        return seen.get();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshRetryTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void backsOffExponentiallyUntilAnAttemptSucceeds() {
+        List<Long> attemptTicks = Collections.synchronizedList(new ArrayList<>());
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(5)
+                .backoff(100L, 10_000L, TimeUnit.MILLISECONDS) // 2 ticks, then 4
+                .jitter(0D)
+                .build();
+
+        Mesh<String> mesh = Mesh.retry(() -> {
+            attemptTicks.add(scheduler.getCurrentTick());
+            return attemptTicks.size() < 3 ? failed("down") : Mesh.createCompletedMesh("up");
+        }, policy);
+
+        scheduler.runUntilIdle(20L);
+
+        assertEquals("up", mesh.getCompletableFuture().getNow(null));
+        assertEquals(Arrays.asList(0L, 2L, 6L), attemptTicks);
+    }
+
+    @Test
+    public void failsWithTheLastFailureAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).backoff(50L, 50L, TimeUnit.MILLISECONDS).build();
+
+        Mesh<String> mesh = Mesh.retry(() -> failed("attempt " + attempts.incrementAndGet()), policy);
+        scheduler.runUntilIdle(20L);
+
+        assertEquals(3, attempts.get());
+        assertEquals("attempt 3", failureOf(mesh).getMessage());
+    }
+
+    @Test
+    public void failuresWhichArentRetriedFailRightAway() {
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.builder().retryOn(throwable -> !(throwable instanceof IllegalArgumentException)).build();
+
+        Mesh<String> mesh = Mesh.retry(() -> {
+            attempts.incrementAndGet();
+
+            Mesh<String> attempt = Mesh.createMesh();
+            attempt.completeExceptionally(new IllegalArgumentException("bad request"));
+            return attempt;
+        }, policy);
+
+        assertTrue(failureOf(mesh) instanceof IllegalArgumentException);
+        assertEquals(1, attempts.get());
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void nullAttemptFailsLikeAnyOtherAttempt() {
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(2).backoff(50L, 50L, TimeUnit.MILLISECONDS).build();
+
+        Mesh<String> mesh = Mesh.retry(() -> {
+            attempts.incrementAndGet();
+            return null;
+        }, policy);
+
+        scheduler.runUntilIdle(20L);
+
+        assertTrue(failureOf(mesh) instanceof NullPointerException);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void openBreakerStopsTheRetries() {
+        CircuitBreaker breaker = CircuitBreaker.register("retry-open", 2, 1L, TimeUnit.MINUTES);
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(5).backoff(50L, 50L, TimeUnit.MILLISECONDS).circuitBreaker(breaker).build();
+
+        Mesh<String> mesh = Mesh.retry(() -> failed("attempt " + attempts.incrementAndGet()), policy);
+        scheduler.runUntilIdle(20L);
+
+        assertEquals(2, attempts.get()); // the third is rejected by the breaker, and not retried
+        assertTrue(failureOf(mesh) instanceof CircuitOpenException);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancellingStopsTheScheduledRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mesh<String> mesh = Mesh.retry(() -> failed("attempt " + attempts.incrementAndGet()), RetryPolicy.builder().build());
+
+        assertTrue(mesh.cancel());
+        scheduler.tick(100L);
+
+        assertEquals(1, attempts.get());
+    }
+
+    private static Mesh<String> failed(String message) {
+        Mesh<String> mesh = Mesh.createMesh();
+        mesh.completeExceptionally(new IllegalStateException(message));
+
+        return mesh;
+    }
+
+    private static Throwable failureOf(Mesh<?> mesh) {
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+
+        return seen.get();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshRunnablesTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void longInlineSyncChainDoesNotGrowTheStack() throws InterruptedException {
+        AtomicReference<Object> result = new AtomicReference<>();
+
+        Thread mainThread = new Thread(null, () -> {
+            VirtualTickScheduler local = VirtualTickScheduler.deterministic().install();
+            local.claimMainThread();
+
+            try {
+                Mesh<Integer> source = Mesh.createMesh();
+                Mesh<Integer> mesh = source;
+                for (int i = 0; i < 100_000; i++) {
+                    mesh = mesh.applySync(value -> value + 1);
+                }
+
+                source.complete(0);
+                result.set(mesh.getCompletableFuture().getNow(null));
+            } catch (Throwable throwable) {
+                result.set(throwable);
+            } finally {
+                local.shutdown();
+            }
+        }, "small-stack-main", 512 * 1024);
+
+        mainThread.start();
+        mainThread.join();
+        scheduler.install();
+
+        assertEquals(100_000, result.get());
+    }
+
+    @Test
+    public void joiningASyncMeshCreatedInsideAnInlineStageRunsIt() {
+        Mesh<Integer> mesh = Mesh.createSupplyingSyncMesh(() -> await(Mesh.createSupplyingSyncMesh(() -> 21)) * 2);
+
+        assertEquals(Integer.valueOf(42), mesh.getCompletableFuture().getNow(null));
+    }
+
+    @Test
+    public void composeCompletesInTheStagesThreadContext() throws InterruptedException {
+        Mesh<String> inner = Mesh.createMesh();
+        Mesh<String> mesh = Mesh.createCompletedMesh("value").composeSync(value -> inner);
+        AtomicReference<Thread> completedOn = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> completedOn.set(Thread.currentThread()));
+
+        Thread completer = new Thread(() -> inner.complete("composed"));
+        completer.start();
+        completer.join();
+
+        assertFalse(mesh.getCompletableFuture().isDone()); // waits for the main thread
+
+        scheduler.tick();
+        assertEquals("composed", mesh.getCompletableFuture().getNow(null));
+        assertSame(Thread.currentThread(), completedOn.get());
+    }
+
+    @Test
+    public void loopRunsUntilTheConditionFails() {
+        AtomicInteger iterations = new AtomicInteger();
+        Mesh<Integer> mesh = Mesh.loop(0, value -> value < 5, value -> {
+            iterations.incrementAndGet();
+            return Mesh.createSupplyingSyncDelayedMesh(() -> value + 1, 1L);
+        });
+
+        scheduler.runUntilIdle(20L);
+
+        assertEquals(Integer.valueOf(5), mesh.getCompletableFuture().getNow(null));
+        assertEquals(5, iterations.get());
+        assertEquals(5L, scheduler.getCurrentTick()); // one tick per iteration
+    }
+
+    @Test
+    public void loopOverCompletedIterationsDoesNotGrowTheStack() {
+        Mesh<Integer> mesh = Mesh.loop(0, value -> value < 1_000_000, value -> Mesh.createCompletedMesh(value + 1));
+
+        assertEquals(Integer.valueOf(1_000_000), mesh.getCompletableFuture().getNow(null));
+    }
+
+    @Test
+    public void loopFailsWithItsBody() {
+        IllegalStateException failure = new IllegalStateException("expected by the test");
+        Mesh<Integer> mesh = Mesh.loop(0, value -> true, value -> {
+            Mesh<Integer> iteration = Mesh.createMesh();
+            iteration.completeExceptionally(failure);
+            return iteration;
+        });
+
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+
+        assertSame(failure, seen.get());
+    }
+
+    @Test
+    public void cancellingTheLoopCancelsTheCurrentIteration() {
+        AtomicInteger iterations = new AtomicInteger();
+        AtomicReference<Mesh<Integer>> current = new AtomicReference<>();
+        Mesh<Integer> mesh = Mesh.loop(0, value -> true, value -> {
+            iterations.incrementAndGet();
+            current.set(Mesh.createSupplyingSyncDelayedMesh(() -> value + 1, 5L));
+            return current.get();
+        });
+
+        assertTrue(mesh.cancel());
+        assertTrue(current.get().isCancelled());
+
+        scheduler.tick(10L);
+        assertEquals(1, iterations.get());
+        assertTrue(scheduler.isIdle()); // the iteration's task was dropped too
+    }
+
+    @Test
+    public void repeatUntilRunsTheBodyAtLeastOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mesh<Integer> once = Mesh.repeatUntil(() -> Mesh.createCompletedMesh(attempts.incrementAndGet()), value -> true);
+
+        assertEquals(Integer.valueOf(1), once.getCompletableFuture().getNow(null));
+
+        attempts.set(0);
+        Mesh<Integer> mesh = Mesh.repeatUntil(() -> Mesh.createSupplyingAsyncMesh(attempts::incrementAndGet), value -> value >= 3);
+
+        scheduler.runUntilIdle(20L);
+        assertEquals(Integer.valueOf(3), mesh.getCompletableFuture().getNow(null));
+        assertEquals(3, attempts.get());
+    }
+
+    private static <T> T await(Mesh<T> mesh) {
+        try {
+            return mesh.toCompletableFuture().get(1L, TimeUnit.SECONDS); // rather than hang if the nested stage never runs
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshScopeTest {
+
+    private VirtualTickScheduler scheduler;
+    private MeshScope scope;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        if (scope != null) {
+            scope.close();
+        }
+
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void closingCancelsPendingChainsAndTheirStages() {
+        scope = MeshScope.create();
+
+        Mesh<String> chain = scope.call(() -> Mesh.createMesh());
+        Mesh<Integer> stage = chain.applyAsync(String::length);
+        assertEquals(2, scope.getPendingMeshes());
+
+        scope.close();
+
+        assertCancelled(chain);
+        assertCancelled(stage);
+        assertTrue(scope.isClosed());
+    }
+
+    @Test
+    public void meshesCreatedByStageBodiesBelongToTheScope() {
+        scope = MeshScope.create();
+        AtomicReference<Mesh<Integer>> inner = new AtomicReference<>();
+        AtomicReference<MeshScope> current = new AtomicReference<>();
+
+        Mesh<Integer> chain = scope.call(() -> Mesh.createSupplyingAsyncMesh(() -> "value")
+                .composeAsync(value -> {
+                    current.set(MeshScope.current());
+                    inner.set(Mesh.createMesh()); // never completed
+
+                    return inner.get();
+                }));
+
+        scheduler.runUntilIdle(10L);
+        assertSame(scope, current.get());
+        assertNull(MeshScope.current()); // restored once the stage ran
+
+        scope.close();
+
+        assertCancelled(inner.get());
+        assertCancelled(chain);
+    }
+
+    @Test
+    public void retryAttemptsBelongToTheScope() {
+        scope = MeshScope.create();
+        AtomicReference<Mesh<String>> attempt = new AtomicReference<>();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicReference<MeshScope> current = new AtomicReference<>();
+
+        scope.call(() -> Mesh.retry(() -> {
+            current.set(MeshScope.current());
+            attempt.set(Mesh.createMesh());
+
+            if (attempts.incrementAndGet() == 1) {
+                attempt.get().completeExceptionally(new IllegalStateException("expected by the test"));
+            }
+
+            return attempt.get(); // the retry, made on the timer after the backoff, is never completed
+        }, RetryPolicy.builder().backoff(50L, 50L, TimeUnit.MILLISECONDS).jitter(0D).build()));
+
+        scheduler.runUntilIdle(10L);
+        assertEquals(2, attempts.get());
+        assertSame(scope, current.get());
+
+        scope.close();
+        assertCancelled(attempt.get());
+    }
+
+    @Test
+    public void chainsPastTheLimitAreRejected() {
+        scope = MeshScope.create(1);
+
+        Mesh<String> first = scope.call(() -> Mesh.createMesh());
+        Mesh<String> second = scope.call(() -> Mesh.createMesh());
+
+        assertEquals(1, scope.getChainsInFlight());
+        assertTrue(second.toCompletableFuture().isCompletedExceptionally());
+
+        try {
+            second.toCompletableFuture().join();
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        first.complete("done");
+        assertEquals(0, scope.getChainsInFlight());
+    }
+
+    @Test
+    public void meshesCreatedByStagesDontCountAsChains() {
+        scope = MeshScope.create(1);
+
+        Mesh<Integer> chain = scope.call(() -> Mesh.createSupplyingAsyncMesh(() -> "value")
+                .composeAsync(value -> Mesh.createSupplyingAsyncMesh(value::length)));
+
+        scheduler.runUntilIdle(10L);
+        assertEquals(Integer.valueOf(5), chain.toCompletableFuture().join());
+        assertEquals(0, scope.getChainsInFlight());
+    }
+
+    @Test
+    public void hedgedAttemptsDontCountAsChains() {
+        scope = MeshScope.create(1);
+
+        Mesh<String> hedged = scope.call(() -> Mesh.hedge(() -> "value", 1L, TimeUnit.SECONDS));
+        assertEquals(1, scope.getChainsInFlight());
+
+        scheduler.runUntilIdle(10L);
+        assertEquals("value", hedged.toCompletableFuture().join());
+    }
+
+    private static void assertCancelled(Mesh<?> mesh) {
+        try {
+            mesh.toCompletableFuture().join();
+            throw new AssertionError("the Mesh was not cancelled");
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof CancellationException);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshSnapshotTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void captureDoesAtLeastOneSourcePerTickWithinTheBudget() {
+        AtomicInteger captured = new AtomicInteger();
+        Mesh<List<Integer>> mesh = MeshSnapshot.capture(Arrays.asList(1, 2, 3, 4), source -> {
+            captured.incrementAndGet();
+            return source * 10;
+        }, 0L, TimeUnit.NANOSECONDS);
+
+        assertEquals(1, captured.get()); // started right away on the main thread
+
+        for (int tick = 2; tick <= 4; tick++) {
+            scheduler.tick();
+            assertEquals(tick, captured.get());
+        }
+
+        assertEquals(Arrays.asList(10, 20, 30, 40), mesh.getCompletableFuture().getNow(null));
+    }
+
+    @Test
+    public void captureFitsInOneTickWithALargeBudget() {
+        Mesh<List<Integer>> mesh = MeshSnapshot.capture(Arrays.asList(1, 2, 3), source -> source == 2 ? null : source, 1L, TimeUnit.MINUTES);
+
+        assertEquals(Arrays.asList(1, 3), mesh.getCompletableFuture().getNow(null)); // null copies are skipped
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void cancellingStopsTheRemainingBatches() {
+        AtomicInteger applied = new AtomicInteger();
+        Mesh<Integer> mesh = MeshSnapshot.apply(Arrays.asList(1, 2, 3), result -> applied.incrementAndGet(), 0L, TimeUnit.NANOSECONDS);
+
+        assertTrue(mesh.cancel());
+        scheduler.tick(5L);
+
+        assertEquals(1, applied.get());
+    }
+
+    @Test
+    public void applySkipsNullResults() {
+        List<Integer> seen = new ArrayList<>();
+        Mesh<Integer> mesh = MeshSnapshot.apply(Arrays.asList(1, null, 3), seen::add, 1L, TimeUnit.MINUTES);
+
+        assertEquals(Integer.valueOf(2), mesh.getCompletableFuture().getNow(null));
+        assertEquals(Arrays.asList(1, 3), seen);
+    }
+
+    @Test
+    public void computeRunsOneAsyncTaskPerSliceAndKeepsTheOrder() {
+        CountingScheduler counting = new CountingScheduler(scheduler);
+        SchedulerUtil.setScheduler(counting);
+
+        int size = 1_000;
+        List<Integer> captured = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            captured.add(i);
+        }
+
+        AtomicIntegerArray computed = new AtomicIntegerArray(size);
+        Mesh<List<Integer>> mesh = MeshSnapshot.compute(captured, value -> {
+            computed.incrementAndGet(value);
+            return value * 2;
+        });
+
+        scheduler.tick();
+
+        assertEquals(Math.min(size, Runtime.getRuntime().availableProcessors()), counting.async.get());
+
+        List<Integer> results = mesh.getCompletableFuture().getNow(null);
+        for (int i = 0; i < size; i++) {
+            assertEquals(1, computed.get(i)); // each copy is in exactly one slice
+            assertEquals(Integer.valueOf(i * 2), results.get(i));
+        }
+    }
+
+    @Test
+    public void computeFailsWithTheFunction() {
+        IllegalStateException failure = new IllegalStateException("expected by the test");
+        Mesh<List<Integer>> mesh = MeshSnapshot.compute(Arrays.asList(1, 2, 3), value -> {
+            throw failure;
+        });
+
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+        mesh.getCompletableFuture().whenComplete((value, throwable) -> seen.set(throwable));
+        scheduler.tick();
+
+        assertSame(failure, seen.get());
+    }
+
+    @Test
+    public void computeOverNothingCompletesRightAway() {
+        Mesh<List<Integer>> mesh = MeshSnapshot.compute(Collections.<Integer>emptyList(), value -> value);
+
+        assertEquals(Collections.emptyList(), mesh.getCompletableFuture().getNow(null));
+    }
+
+    @Test
+    public void chunksSkipsUnloadedChunks() {
+        List<ChunkSnapshot> loaded = new ArrayList<>();
+        World world = (World) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isChunkLoaded":
+                    return args[0].equals(args[1]); // only the diagonal is loaded
+                case "getChunkAt":
+                    ChunkSnapshot snapshot = proxy(ChunkSnapshot.class, "snapshot " + args[0] + "," + args[1]);
+                    loaded.add(snapshot);
+                    return chunk(snapshot);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        Mesh<List<ChunkSnapshot>> mesh = MeshSnapshot.chunks(world, -1, -1, 1, 1, 1L, TimeUnit.MINUTES);
+
+        assertEquals(3, loaded.size());
+        assertEquals(loaded, mesh.getCompletableFuture().getNow(null));
+        assertTrue(scheduler.isIdle()); // fit in the budget, no batch left for the next tick
+    }
+
+    private static Chunk chunk(ChunkSnapshot snapshot) {
+        return (Chunk) Proxy.newProxyInstance(MeshSnapshotTest.class.getClassLoader(), new Class<?>[]{Chunk.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getChunkSnapshot")) {
+                return snapshot;
+            }
+
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, String name) {
+        return type.cast(Proxy.newProxyInstance(MeshSnapshotTest.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return name;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+    }
+
+    /**
+     * Delegates to the virtual scheduler, counting the async tasks.
+     */
+    private static final class CountingScheduler implements MeshScheduler {
+
+        private final VirtualTickScheduler delegate;
+        private final AtomicInteger async = new AtomicInteger();
+
+        private CountingScheduler(VirtualTickScheduler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isMainThread(Thread thread) {
+            return delegate.isMainThread(thread);
+        }
+
+        @Override
+        public MeshTask runSync(Runnable runnable, long delay) {
+            return delegate.runSync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask runAsync(Runnable runnable, long delay) {
+            async.incrementAndGet();
+            return delegate.runAsync(runnable, delay);
+        }
+
+        @Override
+        public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+            return delegate.schedule(runnable, delay, unit);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class PrimitiveMeshTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void reduceWithThrowingOperatorCompletesExceptionally() {
+        LongMesh first = LongMesh.createMesh();
+        LongMesh second = LongMesh.createMesh();
+        LongMesh third = LongMesh.createMesh();
+
+        LongMesh sum = LongMesh.reduce(new LongMesh[]{first, second, third}, 0L, Math::addExact);
+
+        first.complete(Long.MAX_VALUE);
+        second.complete(1L); // overflows
+        assertTrue(sum.isCompletedExceptionally());
+        assertTrue(sum.getThrowable() instanceof ArithmeticException);
+
+        third.complete(1L); // ignored, the reduction already failed
+        assertTrue(sum.isCompletedExceptionally());
+    }
+
+    @Test
+    public void reduceOfCompletedMeshesWithThrowingOperatorCompletesExceptionally() {
+        IntMesh sum = IntMesh.reduce(new IntMesh[]{IntMesh.createCompletedMesh(Integer.MAX_VALUE), IntMesh.createCompletedMesh(1)}, 0, Math::addExact);
+
+        assertTrue(sum.isCompletedExceptionally());
+        assertTrue(sum.getThrowable() instanceof ArithmeticException);
+    }
+
+    @Test
+    public void reduceFailsWithTheFirstFailedMesh() {
+        DoubleMesh first = DoubleMesh.createMesh();
+        DoubleMesh second = DoubleMesh.createMesh();
+        DoubleMesh sum = DoubleMesh.sum(first, second);
+
+        IllegalStateException exception = new IllegalStateException("expected by the test");
+        first.completeExceptionally(exception);
+        second.complete(2D);
+
+        assertEquals(exception, sum.getThrowable());
+    }
+
+    @Test
+    public void reduceCompletesOnceEveryMeshHasCompleted() {
+        LongMesh first = LongMesh.createMesh();
+        LongMesh sum = LongMesh.sum(first, LongMesh.createCompletedMesh(2L), LongMesh.createCompletedMesh(3L));
+
+        assertFalse(sum.isDone());
+
+        first.complete(1L);
+        assertEquals(6L, sum.getNow(-1L));
+    }
+
+    @Test
+    public void maxOfNoMeshesFails() {
+        assertTrue(IntMesh.max().getThrowable() instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void throwingStageCompletesItsDependents() {
+        Mesh<Long> boxed = LongMesh.createCompletedMesh(1L)
+                .applySync(value -> {
+                    throw new IllegalStateException("expected by the test");
+                })
+                .applySync(value -> value + 1)
+                .boxed();
+
+        try {
+            boxed.toCompletableFuture().join();
+            throw new AssertionError("the Mesh completed normally");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void exceptionallyPassesValuesOnAndRecoversFailures() {
+        assertEquals(1L, LongMesh.createCompletedMesh(1L).exceptionallySync(throwable -> 2L).getNow(-1L));
+
+        LongMesh failed = LongMesh.createMesh();
+        failed.completeExceptionally(new IllegalStateException("expected by the test"));
+        assertEquals(2L, failed.exceptionallySync(throwable -> 2L).getNow(-1L));
+    }
+}
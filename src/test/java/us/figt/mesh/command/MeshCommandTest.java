@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.command;
+
+import org.bukkit.command.CommandSender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.Mesh;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class MeshCommandTest {
+
+    private ExecutorService executor;
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        scheduler = VirtualTickScheduler.concurrent(executor).install();
+        scheduler.claimMainThread();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void invalidArgumentsAreSentToTheSender() {
+        List<String> messages = new ArrayList<>();
+        TestCommand command = new TestCommand();
+
+        command.onCommand(sender("Alice", messages), null, "test", new String[]{"invalid"});
+        awaitIdle();
+
+        assertEquals(Collections.singletonList("Unknown argument: invalid"), messages);
+    }
+
+    @Test
+    public void illegalArgumentsFromFetchAreNotSentToTheSender() {
+        List<String> messages = new ArrayList<>();
+        TestCommand command = new TestCommand();
+
+        command.onCommand(sender("Alice", messages), null, "test", new String[]{"fetch"});
+        awaitIdle();
+
+        assertEquals(Collections.singletonList("An internal error occurred while attempting to perform this command"), messages);
+    }
+
+    @Test
+    public void firstTabPressDoesNotWaitForCandidates() {
+        TestCommand command = new TestCommand();
+        CommandSender alice = sender("Alice", new ArrayList<>());
+
+        assertEquals(Collections.emptyList(), command.onTabComplete(alice, null, "test", new String[]{"alice-o"}));
+        awaitIdle(); // the candidates are cached
+
+        assertEquals(Collections.singletonList("alice-one"), command.onTabComplete(alice, null, "test", new String[]{"alice-o"}));
+    }
+
+    @Test
+    public void completionsAreCachedPerSender() {
+        TestCommand command = new TestCommand();
+        CommandSender alice = sender("Alice", new ArrayList<>());
+        CommandSender bob = sender("Bob", new ArrayList<>());
+
+        command.onTabComplete(alice, null, "test", new String[]{""});
+        command.onTabComplete(bob, null, "test", new String[]{""});
+        awaitIdle();
+
+        assertEquals(2, command.onTabComplete(alice, null, "test", new String[]{""}).size());
+
+        List<String> candidates = command.onTabComplete(bob, null, "test", new String[]{""});
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.get(0).startsWith("bob-"));
+    }
+
+    @Test
+    public void idleSendersWhichArentPlayersAreForgotten() {
+        TestCommand command = new TestCommand();
+
+        command.onTabComplete(sender("Alice", new ArrayList<>()), null, "test", new String[]{""});
+        command.onCommand(sender("CONSOLE", new ArrayList<>()), null, "test", new String[]{"invalid"});
+        awaitIdle();
+
+        assertEquals(1, command.getSessionCount()); // Alice's completions are still fresh
+    }
+
+    private void awaitIdle() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+
+        while (!scheduler.isIdle() && System.nanoTime() < deadline) {
+            scheduler.tick();
+            Thread.yield();
+        }
+
+        assertTrue(scheduler.isIdle());
+    }
+
+    private static CommandSender sender(String name, List<String> messages) {
+        return (CommandSender) Proxy.newProxyInstance(MeshCommandTest.class.getClassLoader(), new Class<?>[]{CommandSender.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "sendMessage":
+                    messages.add((String) args[0]);
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+
+    private static final class TestCommand extends MeshCommand<String, String> {
+
+        @Override
+        protected String parse(CommandSender sender, String[] args) {
+            if (args[0].equals("invalid")) {
+                throw new IllegalArgumentException("Unknown argument: " + args[0]);
+            }
+
+            return args[0];
+        }
+
+        @Override
+        protected Mesh<String> fetch(CommandSender sender, String parsed) {
+            throw new IllegalArgumentException("Internal detail of " + parsed);
+        }
+
+        @Override
+        protected void respond(CommandSender sender, String result) {
+            sender.sendMessage(result);
+        }
+
+        @Override
+        protected List<String> complete(CommandSender sender, String[] previous) {
+            String prefix = sender.getName().toLowerCase() + "-";
+            List<String> candidates = new ArrayList<>();
+            candidates.add(prefix + "one");
+            candidates.add(prefix + "two");
+
+            return candidates;
+        }
+    }
+}
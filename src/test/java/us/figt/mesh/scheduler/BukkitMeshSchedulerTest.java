@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class BukkitMeshSchedulerTest {
+
+    // a single test, since stopping the timer can't be undone
+    @Test
+    public void disableStopsScheduledTimerWork() throws InterruptedException {
+        BukkitMeshScheduler scheduler = new BukkitMeshScheduler();
+        Plugin plugin = plugin("Owner");
+        BukkitMeshScheduler.DisableListener listener = new BukkitMeshScheduler.DisableListener(plugin);
+
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.schedule(ran::countDown, 0L, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+
+        AtomicBoolean late = new AtomicBoolean();
+        scheduler.schedule(() -> late.set(true), 200L, TimeUnit.MILLISECONDS);
+
+        listener.onPluginDisable(new PluginDisableEvent(plugin("Other")));
+        assertTrue(isTimerAlive()); // another plugin's disable doesn't concern it
+
+        listener.onPluginDisable(new PluginDisableEvent(plugin));
+        assertSame(MeshTask.NONE, scheduler.schedule(() -> late.set(true), 0L, TimeUnit.MILLISECONDS));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (isTimerAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertFalse(isTimerAlive());
+        Thread.sleep(300L); // past the delay of the dropped task
+        assertFalse(late.get());
+    }
+
+    private static boolean isTimerAlive() {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("Mesh-Timer") && thread.isAlive());
+    }
+
+    private static Plugin plugin(String name) {
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.scheduler;
+
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.testkit.VirtualTickScheduler;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author FigT
+ */
+public class SharedMeshSchedulerTest {
+
+    private final AtomicBoolean providerEnabled = new AtomicBoolean(true);
+    private final Plugin provider = plugin("Provider", providerEnabled);
+    private final Plugin owner = plugin("Owner", new AtomicBoolean(true));
+    private final AtomicInteger ran = new AtomicInteger();
+
+    private SharedMeshRuntime runtime;
+    private VirtualTickScheduler fallback;
+    private SharedMeshScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        runtime = new SharedMeshRuntime();
+        fallback = VirtualTickScheduler.deterministic();
+        scheduler = new SharedMeshScheduler(runtime.toMap(), provider, owner, fallback);
+    }
+
+    @After
+    public void tearDown() {
+        runtime.shutdown();
+        fallback.shutdown();
+    }
+
+    @Test
+    public void tasksRunOnTheRuntime() {
+        scheduler.runSync(ran::incrementAndGet, 0L);
+        assertEquals(1, scheduler.getPendingCount());
+
+        runtime.tick();
+        assertEquals(1, ran.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void providerDisableHandsPendingTasksToTheFallback() {
+        scheduler.runSync(ran::incrementAndGet, 5L);
+        scheduler.runAsync(ran::incrementAndGet, 5L);
+        runtime.tick();
+
+        disable(provider);
+        assertEquals(0, scheduler.getPendingCount());
+
+        runtime.tick(); // shut down, nothing runs there anymore
+        fallback.tick(5L);
+        assertEquals(2, ran.get());
+
+        fallback.tick(10L);
+        assertEquals(2, ran.get()); // and nothing runs twice
+    }
+
+    @Test
+    public void tasksAfterProviderDisableGoToTheFallback() {
+        disable(provider);
+
+        scheduler.runSync(ran::incrementAndGet, 0L);
+        assertEquals(0, scheduler.getPendingCount());
+
+        fallback.tick();
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void ownerDisableCancelsPendingTasks() {
+        scheduler.runSync(ran::incrementAndGet, 1L);
+        scheduler.runAsync(ran::incrementAndGet, 3L);
+
+        disable(owner);
+        assertEquals(0, scheduler.getPendingCount());
+
+        for (int i = 0; i < 5; i++) {
+            runtime.tick();
+        }
+
+        fallback.tick(5L);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void rejectedTasksGoToTheFallback() {
+        runtime.shutdown(); // e.g. its provider is being disabled
+
+        scheduler.runAsync(ran::incrementAndGet, 0L);
+        fallback.tick();
+
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void cancelledTaskDoesNotRun() {
+        scheduler.runSync(ran::incrementAndGet, 2L).cancel();
+        assertEquals(0, scheduler.getPendingCount());
+
+        for (int i = 0; i < 3; i++) {
+            runtime.tick();
+        }
+
+        assertEquals(0, ran.get());
+    }
+
+    private void disable(Plugin plugin) {
+        // the order Bukkit uses: the event is fired to every listener (connected plugins at LOWEST, the runtime at MONITOR), then the plugin is disabled
+        PluginDisableEvent event = new PluginDisableEvent(plugin);
+        scheduler.onPluginDisable(event);
+
+        if (plugin == provider) {
+            runtime.shutdown();
+            providerEnabled.set(false);
+        }
+    }
+
+    private static Plugin plugin(String name, AtomicBoolean enabled) {
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "isEnabled":
+                    return enabled.get();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
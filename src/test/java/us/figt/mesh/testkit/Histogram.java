@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import java.util.Arrays;
+
+/**
+ * A simple thread-safe recorder of long samples (ticks, nanoseconds, task counts) which can report percentiles.
+ *
+ * @author FigT
+ */
+public final class Histogram {
+
+    private long[] samples = new long[64];
+    private int count = 0;
+    private long sum = 0L;
+    private boolean sorted = true;
+
+    public synchronized void record(long value) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count << 1);
+        }
+
+        if (count > 0 && value < samples[count - 1]) {
+            sorted = false;
+        }
+
+        samples[count++] = value;
+        sum += value;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getMin() {
+        return count == 0 ? 0L : sortedSamples()[0];
+    }
+
+    public synchronized long getMax() {
+        return count == 0 ? 0L : sortedSamples()[count - 1];
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0D : (double) sum / count;
+    }
+
+    /**
+     * Gets the value at the given percentile (nearest-rank).
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile < 0D || percentile > 100D) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile);
+        }
+
+        if (count == 0) {
+            return 0L;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100D * count);
+        return sortedSamples()[Math.max(0, rank - 1)];
+    }
+
+    public synchronized void reset() {
+        samples = new long[64];
+        count = 0;
+        sum = 0L;
+        sorted = true;
+    }
+
+    /**
+     * Creates an independent copy of this histogram.
+     *
+     * @return the copy
+     */
+    public synchronized Histogram copy() {
+        Histogram copy = new Histogram();
+        copy.samples = Arrays.copyOf(samples, Math.max(64, count));
+        copy.count = count;
+        copy.sum = sum;
+        copy.sorted = sorted;
+
+        return copy;
+    }
+
+    private long[] sortedSamples() {
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+
+        return samples;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("n=%d min=%d p50=%d p90=%d p99=%d max=%d mean=%.2f",
+                count, getMin(), getPercentile(50D), getPercentile(90D), getPercentile(99D), getMax(), getMean());
+    }
+}
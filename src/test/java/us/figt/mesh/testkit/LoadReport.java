@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+/**
+ * The result of a {@link LoadSimulation} run.
+ *
+ * @author FigT
+ */
+public final class LoadReport {
+
+    private final long ticks;
+    private final int chainsStarted;
+    private final int chainsCompleted;
+    private final int chainsFailed;
+    private final Histogram syncTasksPerTick;
+    private final Histogram syncNanosPerTick;
+    private final Histogram tickDelays;
+    private final Histogram chainLatencyTicks;
+    private final Histogram chainLatencyNanos;
+
+    LoadReport(long ticks, int chainsStarted, int chainsCompleted, int chainsFailed,
+               Histogram syncTasksPerTick, Histogram syncNanosPerTick, Histogram tickDelays,
+               Histogram chainLatencyTicks, Histogram chainLatencyNanos) {
+        this.ticks = ticks;
+        this.chainsStarted = chainsStarted;
+        this.chainsCompleted = chainsCompleted;
+        this.chainsFailed = chainsFailed;
+        this.syncTasksPerTick = syncTasksPerTick;
+        this.syncNanosPerTick = syncNanosPerTick;
+        this.tickDelays = tickDelays;
+        this.chainLatencyTicks = chainLatencyTicks;
+        this.chainLatencyNanos = chainLatencyNanos;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getChainsStarted() {
+        return chainsStarted;
+    }
+
+    public int getChainsCompleted() {
+        return chainsCompleted;
+    }
+
+    public int getChainsFailed() {
+        return chainsFailed;
+    }
+
+    /**
+     * @return the amount of chains which had not finished when the simulation stopped
+     */
+    public int getChainsUnfinished() {
+        return chainsStarted - chainsCompleted - chainsFailed;
+    }
+
+    public Histogram getSyncTasksPerTick() {
+        return syncTasksPerTick;
+    }
+
+    public Histogram getSyncNanosPerTick() {
+        return syncNanosPerTick;
+    }
+
+    public Histogram getTickDelays() {
+        return tickDelays;
+    }
+
+    public Histogram getChainLatencyTicks() {
+        return chainLatencyTicks;
+    }
+
+    public Histogram getChainLatencyNanos() {
+        return chainLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadReport (" + ticks + " ticks)\n"
+                + "  chains: started=" + chainsStarted + " completed=" + chainsCompleted + " failed=" + chainsFailed + " unfinished=" + getChainsUnfinished() + "\n"
+                + "  sync tasks/tick: " + syncTasksPerTick + "\n"
+                + "  sync ns/tick: " + syncNanosPerTick + "\n"
+                + "  tick delay: " + tickDelays + "\n"
+                + "  chain latency (ticks): " + chainLatencyTicks + "\n"
+                + "  chain latency (ns): " + chainLatencyNanos;
+    }
+}
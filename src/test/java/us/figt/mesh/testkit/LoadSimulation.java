@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import us.figt.mesh.Mesh;
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Replays a synthetic workload of Mesh chains against a {@link VirtualTickScheduler}, and reports how it loaded the main thread.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * LoadReport report = LoadSimulation.builder(VirtualTickScheduler.deterministic())
+ *         .chains(5000)
+ *         .startsPerTick(250)
+ *         .workload(i -> Mesh.createSupplyingAsyncMesh(() -> load(i)).acceptSync(data -> apply(data)))
+ *         .run();
+ * }</pre>
+ *
+ * @author FigT
+ */
+public final class LoadSimulation {
+
+    private final VirtualTickScheduler scheduler;
+    private final IntFunction<? extends Mesh<?>> workload;
+    private final int chains;
+    private final int startsPerTick;
+    private final long maxTicks;
+    private final long tickNanos;
+
+    private LoadSimulation(Builder builder) {
+        this.scheduler = builder.scheduler;
+        this.workload = builder.workload;
+        this.chains = builder.chains;
+        this.startsPerTick = builder.startsPerTick;
+        this.maxTicks = builder.maxTicks;
+        this.tickNanos = builder.tickNanos;
+    }
+
+    public static Builder builder(VirtualTickScheduler scheduler) {
+        return new Builder(scheduler);
+    }
+
+    /**
+     * Runs the simulation on the calling thread, which becomes the scheduler's main thread.
+     *
+     * @return the report of the run
+     */
+    public LoadReport run() {
+        MeshScheduler previous = SchedulerUtil.getScheduler();
+        scheduler.install();
+        scheduler.claimMainThread();
+        scheduler.resetStats();
+
+        Histogram latencyTicks = new Histogram();
+        Histogram latencyNanos = new Histogram();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        int started = 0;
+        long ticks = 0L;
+
+        try {
+            while (ticks < maxTicks && (started < chains || completed.get() + failed.get() < started)) {
+                long tickStart = System.nanoTime();
+
+                for (int i = 0; i < startsPerTick && started < chains; i++, started++) {
+                    long startTick = scheduler.getCurrentTick();
+                    long startNanos = System.nanoTime();
+
+                    workload.apply(started).toCompletableFuture().whenComplete((value, throwable) -> {
+                        latencyTicks.record(scheduler.getCurrentTick() - startTick);
+                        latencyNanos.record(System.nanoTime() - startNanos);
+                        (throwable == null ? completed : failed).incrementAndGet();
+                    });
+                }
+
+                scheduler.tick();
+                ticks++;
+
+                long remaining = tickNanos - (System.nanoTime() - tickStart);
+                if (remaining > 0L) {
+                    LockSupport.parkNanos(remaining); // pace the tick
+                }
+            }
+        } finally {
+            SchedulerUtil.setScheduler(previous);
+        }
+
+        return new LoadReport(ticks, started, completed.get(), failed.get(),
+                scheduler.getSyncTasksPerTick().copy(), scheduler.getSyncNanosPerTick().copy(), scheduler.getTickDelays().copy(),
+                latencyTicks.copy(), latencyNanos.copy());
+    }
+
+
+    public static final class Builder {
+
+        private final VirtualTickScheduler scheduler;
+        private IntFunction<? extends Mesh<?>> workload = null;
+        private int chains = 1000;
+        private int startsPerTick = 100;
+        private long maxTicks = 72_000L; // an hour of ticks
+        private long tickNanos = 0L;
+
+        private Builder(VirtualTickScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        /**
+         * @param workload creates the chain with the given index, this is called on the main thread
+         */
+        public Builder workload(IntFunction<? extends Mesh<?>> workload) {
+            this.workload = workload;
+            return this;
+        }
+
+        /**
+         * @param chains the total amount of chains to start
+         */
+        public Builder chains(int chains) {
+            this.chains = chains;
+            return this;
+        }
+
+        /**
+         * @param startsPerTick the amount of chains to start at the beginning of each tick
+         */
+        public Builder startsPerTick(int startsPerTick) {
+            this.startsPerTick = startsPerTick;
+            return this;
+        }
+
+        /**
+         * @param maxTicks the amount of ticks after which the simulation gives up on unfinished chains
+         */
+        public Builder maxTicks(long maxTicks) {
+            this.maxTicks = maxTicks;
+            return this;
+        }
+
+        /**
+         * Sets the minimum real time a tick takes. The default of 0 runs ticks as fast as possible, which is usually only
+         * meaningful for a {@link VirtualTickScheduler#deterministic() deterministic} scheduler.
+         *
+         * @param tickNanos the minimum duration of a tick (<strong>in nanoseconds</strong>)
+         */
+        public Builder tickNanos(long tickNanos) {
+            this.tickNanos = tickNanos;
+            return this;
+        }
+
+        public LoadSimulation build() {
+            if (workload == null) {
+                throw new IllegalStateException("A workload is required");
+            }
+
+            if (startsPerTick <= 0) {
+                throw new IllegalArgumentException("startsPerTick must be positive");
+            }
+
+            return new LoadSimulation(this);
+        }
+
+        public LoadReport run() {
+            return build().run();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import org.junit.Test;
+import us.figt.mesh.Mesh;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author FigT
+ */
+public class LoadSimulationTest {
+
+    @Test
+    public void reportsAKnownWorkload() {
+        VirtualTickScheduler scheduler = VirtualTickScheduler.deterministic();
+
+        try {
+            // each chain: the async supplier runs on the tick it's started before, its sync stage on the tick after,
+            // where the sync stages of the whole batch share a single drain task
+            LoadReport report = LoadSimulation.builder(scheduler)
+                    .chains(100)
+                    .startsPerTick(10)
+                    .workload(i -> Mesh.createSupplyingAsyncMesh(() -> i).acceptSync(value -> {
+                    }))
+                    .run();
+
+            assertEquals(11L, report.getTicks());
+            assertEquals(100, report.getChainsStarted());
+            assertEquals(100, report.getChainsCompleted());
+            assertEquals(0, report.getChainsFailed());
+            assertEquals(0, report.getChainsUnfinished());
+
+            assertEquals(11, report.getSyncTasksPerTick().getCount());
+            assertEquals(0L, report.getSyncTasksPerTick().getMin());
+            assertEquals(1L, report.getSyncTasksPerTick().getMax());
+            assertEquals(0L, report.getTickDelays().getMax());
+
+            assertEquals(100, report.getChainLatencyTicks().getCount());
+            assertEquals(2L, report.getChainLatencyTicks().getMin());
+            assertEquals(2L, report.getChainLatencyTicks().getMax());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void overloadedTicksSpillOverAndDelayChains() {
+        VirtualTickScheduler scheduler = VirtualTickScheduler.deterministic(5);
+
+        try {
+            LoadReport report = LoadSimulation.builder(scheduler)
+                    .chains(20)
+                    .startsPerTick(20)
+                    .workload(i -> Mesh.createSupplyingSyncDelayedMesh(() -> i, 1L)) // a sync task each, due on the first tick
+                    .run();
+
+            assertEquals(4L, report.getTicks());
+            assertEquals(20, report.getChainsCompleted());
+            assertEquals(5L, report.getSyncTasksPerTick().getMax());
+            assertEquals(3L, report.getTickDelays().getMax()); // the last 5 ran 3 ticks late
+            assertEquals(1L, report.getChainLatencyTicks().getMin());
+            assertEquals(4L, report.getChainLatencyTicks().getMax());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void unfinishedAndFailedChainsAreCounted() {
+        VirtualTickScheduler scheduler = VirtualTickScheduler.deterministic();
+
+        try {
+            LoadReport report = LoadSimulation.builder(scheduler)
+                    .chains(10)
+                    .startsPerTick(10)
+                    .maxTicks(20L)
+                    .workload(i -> i % 2 == 0 ? Mesh.createMesh() : Mesh.createSupplyingAsyncMesh(() -> {
+                        throw new IllegalStateException("expected by the test");
+                    }))
+                    .run();
+
+            assertEquals(20L, report.getTicks());
+            assertEquals(0, report.getChainsCompleted());
+            assertEquals(5, report.getChainsFailed());
+            assertEquals(5, report.getChainsUnfinished());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
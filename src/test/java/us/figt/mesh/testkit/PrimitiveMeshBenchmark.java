@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import us.figt.mesh.LongMesh;
+import us.figt.mesh.Mesh;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntConsumer;
+
+/**
+ * Measures the bytes allocated per chain by {@link Mesh Mesh&lt;Long&gt;} versus {@link LongMesh}, run from the test classpath with {@code java us.figt.mesh.testkit.PrimitiveMeshBenchmark}.
+ * <p>
+ * All stages are SYNC and run on the (virtual) main thread, so they run inline and the numbers only contain the
+ * allocations of the Meshes themselves, not those of the scheduler.
+ *
+ * @author FigT
+ */
+public final class PrimitiveMeshBenchmark {
+
+    private static final int STAGES = 8;
+    private static final int REDUCED = 1000;
+
+    private static volatile long sink = 0L; // keeps the results alive
+
+    private PrimitiveMeshBenchmark() {
+        throw new AssertionError("Container class cannot be instantiated"); // seal
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        VirtualTickScheduler scheduler = VirtualTickScheduler.deterministic().install();
+        scheduler.claimMainThread();
+
+        try {
+            report("chain of " + STAGES + " applySync, Mesh<Long>", iterations, PrimitiveMeshBenchmark::boxedChain);
+            report("chain of " + STAGES + " applySync, LongMesh", iterations, PrimitiveMeshBenchmark::primitiveChain);
+            report("sum of " + REDUCED + ", Mesh<Long> whenComplete", iterations / REDUCED, PrimitiveMeshBenchmark::boxedSum);
+            report("sum of " + REDUCED + ", LongMesh.sum", iterations / REDUCED, PrimitiveMeshBenchmark::primitiveSum);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void boxedChain(int i) {
+        Mesh<Long> mesh = Mesh.createCompletedMesh(i + 1000L);
+
+        for (int stage = 0; stage < STAGES; stage++) {
+            mesh = mesh.applySync(value -> value * 31 + 7);
+        }
+
+        mesh.acceptSync(value -> sink = value);
+    }
+
+    private static void primitiveChain(int i) {
+        LongMesh mesh = LongMesh.createCompletedMesh(i + 1000L);
+
+        for (int stage = 0; stage < STAGES; stage++) {
+            mesh = mesh.applySync(value -> value * 31 + 7);
+        }
+
+        mesh.acceptSync(value -> sink = value);
+    }
+
+    private static void boxedSum(int i) {
+        @SuppressWarnings("unchecked")
+        Mesh<Long>[] meshes = new Mesh[REDUCED];
+
+        for (int n = 0; n < REDUCED; n++) {
+            meshes[n] = Mesh.createCompletedMesh(i + n + 1000L);
+        }
+
+        // the same shape as LongMesh.sum: one continuation per input into a shared accumulator
+        BoxedSum sum = new BoxedSum(REDUCED);
+
+        for (Mesh<Long> mesh : meshes) {
+            mesh.whenComplete(sum::accept);
+        }
+
+        sum.target.acceptSync(value -> sink = value);
+    }
+
+    private static void primitiveSum(int i) {
+        LongMesh[] meshes = new LongMesh[REDUCED];
+
+        for (int n = 0; n < REDUCED; n++) {
+            meshes[n] = LongMesh.createCompletedMesh(i + n + 1000L);
+        }
+
+        LongMesh.sum(meshes).acceptSync(value -> sink = value);
+    }
+
+    private static void report(String name, int iterations, IntConsumer operation) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println(name + ": allocation counting is not supported by this JVM");
+            return;
+        }
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < iterations; i++) {
+            operation.accept(i); // warm up
+        }
+
+        long bytesBefore = allocations.getThreadAllocatedBytes(threadId);
+        long nanosBefore = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            operation.accept(i);
+        }
+
+        long nanos = System.nanoTime() - nanosBefore;
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        System.out.println(String.format("%-45s %10.1f bytes/op %10.1f ns/op", name, (double) bytes / iterations, (double) nanos / iterations));
+    }
+
+
+    private static final class BoxedSum {
+
+        private final Mesh<Long> target = Mesh.createMesh();
+        private int remaining;
+        private long accumulator = 0L;
+
+        private BoxedSum(int remaining) {
+            this.remaining = remaining;
+        }
+
+        private void accept(Long value, Throwable throwable) {
+            if (throwable != null) {
+                target.completeExceptionally(throwable);
+                return;
+            }
+
+            long result;
+
+            synchronized (this) {
+                accumulator += value;
+
+                if (--remaining > 0) {
+                    return;
+                }
+
+                result = accumulator;
+            }
+
+            target.complete(result);
+        }
+    }
+}
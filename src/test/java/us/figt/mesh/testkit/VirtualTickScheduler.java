@@ -0,0 +1,417 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import us.figt.mesh.scheduler.MeshScheduler;
+import us.figt.mesh.scheduler.MeshTask;
+import us.figt.mesh.utils.PluginUtil;
+import us.figt.mesh.utils.SchedulerUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process {@link MeshScheduler} driven by a virtual tick clock, so Mesh can run (faster than real time) without a live server.
+ * <p>
+ * The thread calling {@link #tick()} acts as the main thread. Sync tasks follow the BukkitScheduler's rules: a task
+ * scheduled without a delay runs on the next tick, and a task scheduled with a delay runs that many ticks later.
+ * <p>
+ * In {@link #deterministic() deterministic} mode, async tasks run in submission order on a single worker thread, and every
+ * tick waits for the async work which became due on it, so a run is fully reproducible. In {@link #concurrent(ExecutorService) concurrent}
+ * mode async tasks are handed to the given executor as soon as they become due, and ticks do not wait for them.
+ * <p>
+ * Timer tasks run as async tasks once the virtual time (50ms per tick) has passed their delay.
+ *
+ * @author FigT
+ */
+public final class VirtualTickScheduler implements MeshScheduler {
+
+    public static final long NANOS_PER_TICK = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private final Object lock = new Object();
+    private final PriorityQueue<VirtualTask> syncQueue = new PriorityQueue<>();
+    private final PriorityQueue<VirtualTask> delayedAsyncQueue = new PriorityQueue<>();
+    private final ArrayDeque<VirtualTask> dueAsyncQueue = new ArrayDeque<>(); // only used in deterministic mode
+    private final AtomicInteger asyncInFlight = new AtomicInteger();
+
+    private final ExecutorService asyncExecutor;
+    private final boolean deterministic;
+    private final int maxSyncTasksPerTick;
+
+    private final Histogram syncTasksPerTick = new Histogram();
+    private final Histogram syncNanosPerTick = new Histogram();
+    private final Histogram tickDelays = new Histogram();
+
+    private volatile Thread mainThread = null;
+    private volatile long currentTick = 0L;
+    private long sequence = 0L;
+
+    private VirtualTickScheduler(ExecutorService asyncExecutor, boolean deterministic, int maxSyncTasksPerTick) {
+        this.asyncExecutor = asyncExecutor;
+        this.deterministic = deterministic;
+        this.maxSyncTasksPerTick = maxSyncTasksPerTick;
+    }
+
+    /**
+     * Creates a scheduler which runs async tasks one at a time, in order, on a single worker thread.
+     *
+     * @return the scheduler
+     */
+    public static VirtualTickScheduler deterministic() {
+        return deterministic(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a scheduler which runs async tasks one at a time, in order, on a single worker thread, and runs at most
+     * the given amount of sync tasks per tick (the rest spill over into the following ticks, like an overloaded server).
+     *
+     * @param maxSyncTasksPerTick the maximum amount of sync tasks to run per tick
+     * @return the scheduler
+     */
+    public static VirtualTickScheduler deterministic(int maxSyncTasksPerTick) {
+        ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Mesh-VirtualAsync");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        return new VirtualTickScheduler(worker, true, maxSyncTasksPerTick);
+    }
+
+    /**
+     * Creates a scheduler which hands async tasks to the given executor as soon as they become due.
+     *
+     * @param asyncExecutor the executor to run async tasks on
+     * @return the scheduler
+     */
+    public static VirtualTickScheduler concurrent(ExecutorService asyncExecutor) {
+        return new VirtualTickScheduler(asyncExecutor, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes Mesh dispatch its tasks through this scheduler.
+     *
+     * @return this scheduler
+     */
+    public VirtualTickScheduler install() {
+        SchedulerUtil.setScheduler(this);
+        return this;
+    }
+
+    /**
+     * Makes Mesh go back to the BukkitScheduler, if this scheduler is the installed one.
+     */
+    public void uninstall() {
+        if (SchedulerUtil.getScheduler() == this) {
+            SchedulerUtil.setScheduler(null);
+        }
+    }
+
+    /**
+     * Makes the calling thread the main thread of this scheduler.
+     */
+    public void claimMainThread() {
+        Thread current = Thread.currentThread();
+
+        if (mainThread != null && mainThread != current) {
+            throw new IllegalStateException("The main thread has already been claimed by " + mainThread.getName());
+        }
+
+        mainThread = current;
+    }
+
+    @Override
+    public boolean isMainThread(Thread thread) {
+        return thread == mainThread;
+    }
+
+    @Override
+    public MeshTask runSync(Runnable runnable, long delay) {
+        synchronized (lock) {
+            VirtualTask task = new VirtualTask(runnable, currentTick + Math.max(1L, delay), sequence++);
+            syncQueue.add(task);
+
+            return task;
+        }
+    }
+
+    @Override
+    public MeshTask runAsync(Runnable runnable, long delay) {
+        VirtualTask task;
+
+        synchronized (lock) {
+            task = new VirtualTask(runnable, currentTick + Math.max(0L, delay), sequence++);
+            asyncInFlight.incrementAndGet();
+
+            if (delay > 0L) {
+                delayedAsyncQueue.add(task);
+                return task;
+            }
+
+            if (deterministic) {
+                dueAsyncQueue.add(task);
+                return task;
+            }
+        }
+
+        asyncExecutor.execute(task);
+        return task;
+    }
+
+    @Override
+    public MeshTask schedule(Runnable runnable, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(Math.max(0L, delay));
+        return runAsync(runnable, (nanos + NANOS_PER_TICK - 1) / NANOS_PER_TICK); // round up to whole ticks
+    }
+
+    /**
+     * Runs a single tick.
+     */
+    public void tick() {
+        claimMainThread();
+
+        List<VirtualTask> dueAsync = new ArrayList<>();
+        List<VirtualTask> dueSync = new ArrayList<>();
+        long tick;
+
+        synchronized (lock) {
+            tick = ++currentTick;
+
+            while (!delayedAsyncQueue.isEmpty() && delayedAsyncQueue.peek().dueTick <= tick) {
+                VirtualTask task = delayedAsyncQueue.poll();
+
+                if (deterministic) {
+                    dueAsyncQueue.add(task);
+                } else {
+                    dueAsync.add(task);
+                }
+            }
+
+            while (!syncQueue.isEmpty() && syncQueue.peek().dueTick <= tick && dueSync.size() < maxSyncTasksPerTick) {
+                dueSync.add(syncQueue.poll());
+            }
+        }
+
+        dueAsync.forEach(asyncExecutor::execute);
+
+        // sync phase
+        long start = System.nanoTime();
+        int ran = 0;
+
+        for (VirtualTask task : dueSync) {
+            if (task.run0()) {
+                tickDelays.record(tick - task.dueTick);
+                ran++;
+            }
+        }
+
+        syncNanosPerTick.record(System.nanoTime() - start);
+        syncTasksPerTick.record(ran);
+
+        if (deterministic) {
+            drainAsync();
+        }
+    }
+
+    /**
+     * Runs the given amount of ticks.
+     *
+     * @param ticks the amount of ticks to run
+     */
+    public void tick(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Runs ticks until there are no pending tasks left.
+     *
+     * @param maxTicks the maximum amount of ticks to run
+     * @return the amount of ticks which were run
+     */
+    public long runUntilIdle(long maxTicks) {
+        long ticks = 0L;
+
+        while (ticks < maxTicks && !isIdle()) {
+            tick();
+            ticks++;
+        }
+
+        return ticks;
+    }
+
+    /**
+     * Checks if there are no sync tasks queued and no async tasks queued or running.
+     *
+     * @return true if this scheduler is idle
+     */
+    public boolean isIdle() {
+        synchronized (lock) {
+            return syncQueue.isEmpty() && asyncInFlight.get() == 0;
+        }
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the amount of sync tasks run per tick
+     */
+    public Histogram getSyncTasksPerTick() {
+        return syncTasksPerTick;
+    }
+
+    /**
+     * @return the time (<strong>in nanoseconds</strong>) spent running sync tasks per tick
+     */
+    public Histogram getSyncNanosPerTick() {
+        return syncNanosPerTick;
+    }
+
+    /**
+     * @return how many ticks sync tasks ran after the tick they were due on
+     */
+    public Histogram getTickDelays() {
+        return tickDelays;
+    }
+
+    public void resetStats() {
+        syncTasksPerTick.reset();
+        syncNanosPerTick.reset();
+        tickDelays.reset();
+    }
+
+    /**
+     * Stops this scheduler's async worker, if it owns one.
+     */
+    public void shutdown() {
+        uninstall();
+
+        if (deterministic) {
+            asyncExecutor.shutdownNow();
+        }
+    }
+
+    private void drainAsync() {
+        while (true) {
+            List<VirtualTask> batch;
+
+            synchronized (lock) {
+                if (dueAsyncQueue.isEmpty()) {
+                    return;
+                }
+
+                batch = new ArrayList<>(dueAsyncQueue);
+                dueAsyncQueue.clear();
+            }
+
+            try {
+                asyncExecutor.submit(() -> batch.forEach(VirtualTask::run)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Virtual async worker failed", e.getCause());
+            }
+        }
+    }
+
+
+    private final class VirtualTask implements MeshTask, Runnable, Comparable<VirtualTask> {
+
+        private final Runnable runnable;
+        private final long dueTick;
+        private final long sequence;
+        private volatile boolean cancelled = false;
+        private volatile boolean finished = false;
+
+        private VirtualTask(Runnable runnable, long dueTick, long sequence) {
+            this.runnable = runnable;
+            this.dueTick = dueTick;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                run0();
+            } finally {
+                if (!finished) {
+                    finished = true;
+                    asyncInFlight.decrementAndGet();
+                }
+            }
+        }
+
+        private boolean run0() {
+            if (cancelled) {
+                return false;
+            }
+
+            try {
+                runnable.run();
+            } catch (Throwable throwable) {
+                PluginUtil.logException("Mesh-Virtual - A task threw an exception", throwable); // mirror the BukkitScheduler, which logs and carries on
+            }
+
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+
+            synchronized (lock) {
+                // drop the task right away, like the BukkitScheduler does
+                if (syncQueue.remove(this)) {
+                    return;
+                }
+
+                if (!delayedAsyncQueue.remove(this) && !dueAsyncQueue.remove(this)) {
+                    return;
+                }
+            }
+
+            finished = true;
+            asyncInFlight.decrementAndGet();
+        }
+
+        @Override
+        public int compareTo(VirtualTask other) {
+            int byTick = Long.compare(dueTick, other.dueTick);
+            return byTick != 0 ? byTick : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 FigT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package us.figt.mesh.testkit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.figt.mesh.scheduler.MeshTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author FigT
+ */
+public class VirtualTickSchedulerTest {
+
+    private VirtualTickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = VirtualTickScheduler.deterministic().install();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void syncTaskWithoutDelayRunsOnTheNextTick() {
+        List<Long> ranOn = new ArrayList<>();
+        scheduler.runSync(() -> ranOn.add(scheduler.getCurrentTick()), 0L);
+
+        assertTrue(ranOn.isEmpty());
+        scheduler.tick(3L);
+        assertEquals(1, ranOn.size());
+        assertEquals(1L, (long) ranOn.get(0));
+    }
+
+    @Test
+    public void delayedSyncTaskRunsThatManyTicksLater() {
+        List<Long> ranOn = new ArrayList<>();
+        scheduler.runSync(() -> ranOn.add(scheduler.getCurrentTick()), 5L);
+
+        scheduler.tick(10L);
+        assertEquals(5L, (long) ranOn.get(0));
+    }
+
+    @Test
+    public void deterministicAsyncTasksRunInSubmissionOrder() {
+        List<Integer> order = new ArrayList<>(); // only touched by the single worker
+
+        for (int i = 0; i < 100; i++) {
+            int index = i;
+            scheduler.runAsync(() -> order.add(index), 0L);
+        }
+
+        scheduler.tick();
+
+        assertEquals(100, order.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void cancelledTaskIsDroppedRightAway() {
+        List<String> ran = new ArrayList<>();
+        MeshTask sync = scheduler.runSync(() -> ran.add("sync"), 2L);
+        MeshTask async = scheduler.runAsync(() -> ran.add("async"), 2L);
+
+        sync.cancel();
+        async.cancel();
+
+        assertTrue(scheduler.isIdle());
+        scheduler.tick(5L);
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheTick() {
+        List<String> ran = new ArrayList<>();
+        scheduler.runSync(() -> {
+            throw new IllegalStateException("expected by the test");
+        }, 0L);
+        scheduler.runSync(() -> ran.add("after"), 0L);
+
+        scheduler.tick();
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void timerTasksRunOnceTheirVirtualTimeHasPassed() {
+        List<Long> ranOn = new ArrayList<>();
+        scheduler.schedule(() -> ranOn.add(scheduler.getCurrentTick()), 120L, TimeUnit.MILLISECONDS);
+
+        scheduler.tick(2L);
+        assertTrue(ranOn.isEmpty());
+        scheduler.tick();
+        assertEquals(3L, (long) ranOn.get(0)); // rounded up to whole ticks
+    }
+}